@@ -0,0 +1,377 @@
+package me.hammerle.snuviscript.code;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import me.hammerle.snuviscript.code.ClassFileBuilder.Code;
+import me.hammerle.snuviscript.code.ClassFileBuilder.Label;
+import me.hammerle.snuviscript.instructions.ArithmeticFunction;
+import me.hammerle.snuviscript.instructions.Array;
+import me.hammerle.snuviscript.instructions.ArrayLoad;
+import me.hammerle.snuviscript.instructions.Break;
+import me.hammerle.snuviscript.instructions.CompareFunction;
+import me.hammerle.snuviscript.instructions.Constant;
+import me.hammerle.snuviscript.instructions.Continue;
+import me.hammerle.snuviscript.instructions.EndIf;
+import me.hammerle.snuviscript.instructions.Function;
+import me.hammerle.snuviscript.instructions.Goto;
+import me.hammerle.snuviscript.instructions.Increment;
+import me.hammerle.snuviscript.instructions.Instruction;
+import me.hammerle.snuviscript.instructions.SignInverter;
+import static me.hammerle.snuviscript.code.ClassFileBuilder.*;
+
+// translates instructions into a hidden class, every instruction gets its own call site of the
+// exact instruction class so the jit can inline it, jumps become native jumps inside a chunk,
+// arithmetic, compares and builtin functions are called directly without Instruction.execute
+final class ByteCodeCompiler {
+    // keeps the chunk methods below the size limit the jit is willing to compile
+    static final int CHUNK_SIZE = 64;
+
+    private static final String SCRIPT = "me/hammerle/snuviscript/code/Script";
+    private static final String INSTRUCTION = "me/hammerle/snuviscript/instructions/Instruction";
+    private static final String INPUT_PROVIDER =
+            "me/hammerle/snuviscript/inputprovider/InputProvider";
+    private static final String DATA_STACK = "me/hammerle/snuviscript/code/DataStack";
+    private static final String FUNCTION = "me/hammerle/snuviscript/instructions/Function";
+    private static final String COMPARE_FUNCTION =
+            "me/hammerle/snuviscript/instructions/CompareFunction";
+    private static final String NAMED_FUNCTION = "me/hammerle/snuviscript/code/NamedFunction";
+    private static final String BI_FUNCTION = "me/hammerle/snuviscript/code/ExceptionBiFunction";
+    private static final String CONSTANT_BOOLEAN =
+            "me/hammerle/snuviscript/inputprovider/ConstantBoolean";
+    private static final String CHUNK_DESCRIPTOR = "(L" + SCRIPT + ";)V";
+
+    private final Instruction[] code;
+    private final ClassFileBuilder cf;
+    private final String className;
+
+    private ByteCodeCompiler(Instruction[] code) {
+        this.code = code;
+        className = "me/hammerle/snuviscript/code/CompiledScript";
+        cf = new ClassFileBuilder(className, "java/lang/Object",
+                "me/hammerle/snuviscript/code/CompiledCode");
+    }
+
+    // the lookup must belong to Script, the generated class becomes its nestmate
+    static CompiledCode compile(Instruction[] code, MethodHandles.Lookup lookup) {
+        ByteCodeCompiler c = new ByteCodeCompiler(code);
+        byte[] bytes = c.generate();
+        try {
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(bytes, true,
+                    MethodHandles.Lookup.ClassOption.NESTMATE);
+            return (CompiledCode) hidden
+                    .findConstructor(hidden.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch(Throwable t) {
+            throw new IllegalStateException("cannot compile script to bytecode", t);
+        }
+    }
+
+    // instructions which never jump, wait or stop the script
+    private static boolean isStraight(Instruction instr) {
+        Class<?> c = instr.getClass();
+        return c == Constant.class || c == Array.class || c == ArithmeticFunction.class
+                || c == CompareFunction.class || c == SignInverter.class || c == EndIf.class
+                || c == ArrayLoad.class || c == Increment.class;
+    }
+
+    private static boolean isPlainGoto(Instruction instr) {
+        Class<?> c = instr.getClass();
+        return c == Goto.class || c == Break.class || c == Continue.class;
+    }
+
+    private byte[] generate() {
+        Code init = cf.addMethod(ACC_PUBLIC, "<init>", "()V", 1, 1);
+        init.op(ALOAD, 0);
+        init.method(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        init.op(RETURN);
+
+        int chunks = (code.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        Code run = cf.addMethod(ACC_PUBLIC, "run", "(L" + SCRIPT + ";I)V", 1, 3);
+        if(chunks > 0) {
+            Label end = new Label();
+            Label[] labels = new Label[chunks];
+            for(int i = 0; i < chunks; i++) {
+                labels[i] = new Label();
+            }
+            run.op(ILOAD, 2);
+            run.tableSwitch(0, end, labels);
+            for(int i = 0; i < chunks; i++) {
+                run.mark(labels[i]);
+                run.op(ALOAD, 1);
+                run.method(INVOKESTATIC, className, "chunk" + i, CHUNK_DESCRIPTOR);
+                run.op(RETURN);
+            }
+            run.mark(end);
+        }
+        run.op(RETURN);
+
+        for(int i = 0; i < chunks; i++) {
+            generateChunk(i);
+        }
+        return cf.toByteArray();
+    }
+
+    private void setLineIndex(Code c, int index) {
+        c.op(ALOAD, 0);
+        c.constant(index);
+        c.field(PUTFIELD, SCRIPT, "lineIndex", "I");
+    }
+
+    // adds the instructions counted in local 3 to the budget of the script
+    private void flushCount(Code c) {
+        c.op(ALOAD, 0);
+        c.op(DUP);
+        c.field(GETFIELD, SCRIPT, "executed", "J");
+        c.op(ILOAD, 3);
+        c.op(I2L);
+        c.op(LADD);
+        c.field(PUTFIELD, SCRIPT, "executed", "J");
+        c.op(ICONST_0);
+        c.op(ISTORE, 3);
+    }
+
+    // locals: 0 script, 1 code, 2 next instruction, 3 executed instructions, 4 and 5 popped
+    // arguments
+    private void generateChunk(int chunk) {
+        int low = chunk * CHUNK_SIZE;
+        int high = Math.min(low + CHUNK_SIZE, code.length);
+        Code c = cf.addMethod(ACC_STATIC, "chunk" + chunk, CHUNK_DESCRIPTOR, 6, 6);
+        Label dispatch = new Label();
+        Label out = new Label();
+        Label[] labels = new Label[high - low];
+        for(int i = 0; i < labels.length; i++) {
+            labels[i] = new Label();
+        }
+
+        c.op(ALOAD, 0);
+        c.field(GETFIELD, SCRIPT, "code", "[L" + INSTRUCTION + ";");
+        c.op(ASTORE, 1);
+        c.op(ALOAD, 0);
+        c.field(GETFIELD, SCRIPT, "lineIndex", "I");
+        c.op(ISTORE, 2);
+        c.op(ICONST_0);
+        c.op(ISTORE, 3);
+
+        // every jump passes here, which keeps the budget check of the interpreter
+        c.mark(dispatch);
+        flushCount(c);
+        c.op(ILOAD, 2);
+        c.constant(low);
+        c.jump(IF_ICMPLT, out);
+        c.op(ILOAD, 2);
+        c.constant(high);
+        c.jump(IF_ICMPGE, out);
+        checkStop(c, out);
+        c.op(ALOAD, 0);
+        c.method(INVOKEVIRTUAL, SCRIPT, "isOverBudget", "()Z");
+        c.jump(IFNE, out);
+        c.op(ILOAD, 2);
+        c.tableSwitch(low, out, labels);
+
+        for(int i = low; i < high; i++) {
+            c.mark(labels[i - low]);
+            generateInstruction(c, i, low, high, labels, dispatch, out);
+        }
+        setLineIndex(c, high);
+        c.mark(out);
+        flushCount(c);
+        c.op(RETURN);
+
+        // a failing instruction still counts the instructions before it
+        Label failed = new Label();
+        c.mark(failed);
+        flushCount(c);
+        c.op(ATHROW);
+        c.catchAll(dispatch, out, failed);
+    }
+
+    private void checkStop(Code c, Label out) {
+        c.op(ALOAD, 0);
+        c.field(GETFIELD, SCRIPT, "isWaiting", "Z");
+        c.jump(IFNE, out);
+        c.op(ALOAD, 0);
+        c.field(GETFIELD, SCRIPT, "isHolded", "Z");
+        c.jump(IFNE, out);
+    }
+
+    private void generateInstruction(Code c, int index, int low, int high, Label[] labels,
+            Label dispatch, Label out) {
+        Instruction instr = code[index];
+        c.increment(3, 1);
+        setLineIndex(c, index);
+        if(isPlainGoto(instr)) {
+            int target = ((Goto) instr).getJump() + 1;
+            setLineIndex(c, target);
+            c.constant(target);
+            c.op(ISTORE, 2);
+            // backward jumps go through the dispatcher to check the time
+            c.jump(GOTO, target > index && target < high ? labels[target - low] : dispatch);
+            return;
+        }
+
+        Class<?> type = instr.getClass();
+        if(type == ArithmeticFunction.class || type == SignInverter.class) {
+            generateArithmetic(c, instr);
+        } else if(type == CompareFunction.class) {
+            generateCompare(c, index, instr);
+        } else if(type == Function.class
+                && !FunctionRegistry.isUserFunction(((Function) instr).getFunction())) {
+            generateFunction(c, index, instr);
+        } else {
+            String owner = Modifier.isPublic(type.getModifiers())
+                    ? type.getName().replace('.', '/') : INSTRUCTION;
+            loadInstruction(c, index, owner);
+            c.op(ALOAD, 0);
+            c.op(ALOAD, 0);
+            c.constant(instr.getArguments());
+            c.method(INVOKEVIRTUAL, SCRIPT, "popArguments", "(I)[L" + INPUT_PROVIDER + ";");
+            c.method(INVOKEVIRTUAL, owner, "execute",
+                    "(L" + SCRIPT + ";[L" + INPUT_PROVIDER + ";)L" + INPUT_PROVIDER + ";");
+            c.op(ALOAD, 0);
+            c.op(SWAP);
+            c.method(INVOKEVIRTUAL, SCRIPT, "pushIfNotNull", "(L" + INPUT_PROVIDER + ";)V");
+        }
+        if(isStraight(instr)) {
+            return;
+        }
+
+        // lineIndex++ of the interpreter
+        c.op(ALOAD, 0);
+        c.field(GETFIELD, SCRIPT, "lineIndex", "I");
+        c.op(ICONST_1);
+        c.op(IADD);
+        c.op(ISTORE, 2);
+        c.op(ALOAD, 0);
+        c.op(ILOAD, 2);
+        c.field(PUTFIELD, SCRIPT, "lineIndex", "I");
+        checkStop(c, out);
+        Label next = new Label();
+        c.op(ILOAD, 2);
+        c.constant(index + 1);
+        c.jump(IF_ICMPEQ, next);
+        if(instr instanceof Goto) {
+            int target = ((Goto) instr).getJump() + 1;
+            if(target > index + 1 && target < high) {
+                c.op(ILOAD, 2);
+                c.constant(target);
+                c.jump(IF_ICMPEQ, labels[target - low]);
+            }
+        }
+        c.jump(GOTO, dispatch);
+        c.mark(next);
+    }
+
+    private void loadInstruction(Code c, int index, String owner) {
+        c.op(ALOAD, 1);
+        c.constant(index);
+        c.op(AALOAD);
+        c.classOp(CHECKCAST, owner);
+    }
+
+    private void popArgument(Code c) {
+        c.op(ALOAD, 0);
+        c.field(GETFIELD, SCRIPT, "dataStack", "L" + DATA_STACK + ";");
+        c.method(INVOKEVIRTUAL, DATA_STACK, "pop", "()L" + INPUT_PROVIDER + ";");
+    }
+
+    private void getDouble(Code c) {
+        c.op(ALOAD, 0);
+        c.method(INVOKEVIRTUAL, INPUT_PROVIDER, "getDouble", "(L" + SCRIPT + ";)D");
+    }
+
+    // the left side is read first like in ArithmeticFunction
+    private void generateArithmetic(Code c, Instruction instr) {
+        boolean push = instr instanceof SignInverter || !instr.shouldNotReturnValue();
+        if(push) {
+            c.op(ALOAD, 0);
+        }
+        if(instr.getArguments() == 1) {
+            popArgument(c);
+            getDouble(c);
+            c.op(DNEG);
+        } else {
+            popArgument(c);
+            c.op(ASTORE, 4);
+            popArgument(c);
+            getDouble(c);
+            c.op(ALOAD, 4);
+            getDouble(c);
+            switch(((Function) instr).getFunction().getName().charAt(0)) {
+                case '+':
+                    c.op(DADD);
+                    break;
+                case '-':
+                    c.op(DSUB);
+                    break;
+                case '*':
+                    c.op(DMUL);
+                    break;
+                default:
+                    c.op(DDIV);
+            }
+        }
+        if(push) {
+            c.method(INVOKEVIRTUAL, SCRIPT, "pushDouble", "(D)V");
+        } else {
+            c.op(POP2);
+        }
+    }
+
+    private void generateCompare(Code c, int index, Instruction instr) {
+        popArgument(c);
+        c.op(ASTORE, 5);
+        popArgument(c);
+        c.op(ASTORE, 4);
+        boolean push = !instr.shouldNotReturnValue();
+        if(push) {
+            c.op(ALOAD, 0);
+            c.field(GETFIELD, SCRIPT, "dataStack", "L" + DATA_STACK + ";");
+        }
+        loadInstruction(c, index, COMPARE_FUNCTION);
+        c.op(ALOAD, 0);
+        c.op(ALOAD, 4);
+        c.op(ALOAD, 5);
+        c.method(INVOKEVIRTUAL, COMPARE_FUNCTION, "compare",
+                "(L" + SCRIPT + ";L" + INPUT_PROVIDER + ";L" + INPUT_PROVIDER + ";)Z");
+        if(!push) {
+            c.op(POP);
+            return;
+        }
+        Label isFalse = new Label();
+        Label done = new Label();
+        c.jump(IFEQ, isFalse);
+        c.field(GETSTATIC, CONSTANT_BOOLEAN, "TRUE", "L" + CONSTANT_BOOLEAN + ";");
+        c.jump(GOTO, done);
+        c.mark(isFalse);
+        c.field(GETSTATIC, CONSTANT_BOOLEAN, "FALSE", "L" + CONSTANT_BOOLEAN + ";");
+        c.mark(done);
+        c.method(INVOKEVIRTUAL, DATA_STACK, "push", "(L" + INPUT_PROVIDER + ";)V");
+    }
+
+    // the lambda of the builtin is called from here, so each call site sees a single target
+    private void generateFunction(Code c, int index, Instruction instr) {
+        loadInstruction(c, index, FUNCTION);
+        c.method(INVOKEVIRTUAL, FUNCTION, "getFunction", "()L" + NAMED_FUNCTION + ";");
+        c.method(INVOKEVIRTUAL, NAMED_FUNCTION, "getFunction", "()L" + BI_FUNCTION + ";");
+        c.op(ALOAD, 0);
+        c.op(ALOAD, 0);
+        c.constant(instr.getArguments());
+        c.method(INVOKEVIRTUAL, SCRIPT, "popArguments", "(I)[L" + INPUT_PROVIDER + ";");
+        c.interfaceMethod(BI_FUNCTION, "apply",
+                "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", 3);
+        if(instr.shouldNotReturnValue()) {
+            c.op(POP);
+            return;
+        }
+        Label skip = new Label();
+        c.op(ASTORE, 4);
+        c.op(ALOAD, 4);
+        c.field(GETSTATIC, "java/lang/Void", "TYPE", "Ljava/lang/Class;");
+        c.jump(IF_ACMPEQ, skip);
+        c.op(ALOAD, 0);
+        c.op(ALOAD, 4);
+        c.method(INVOKEVIRTUAL, SCRIPT, "pushValue", "(Ljava/lang/Object;)V");
+        c.mark(skip);
+    }
+}
@@ -0,0 +1,371 @@
+package me.hammerle.snuviscript.code;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// minimal class file writer, version 49 is used so the verifier infers the frames itself and no
+// stack map tables have to be written
+final class ClassFileBuilder {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ISTORE = 0x36;
+    static final int ASTORE = 0x3A;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int SWAP = 0x5F;
+    static final int IADD = 0x60;
+    static final int LADD = 0x61;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6B;
+    static final int DDIV = 0x6F;
+    static final int DNEG = 0x77;
+    static final int IINC = 0x84;
+    static final int I2L = 0x85;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int IF_ICMPEQ = 0x9F;
+    static final int IF_ICMPLT = 0xA1;
+    static final int IF_ICMPGE = 0xA2;
+    static final int IF_ACMPEQ = 0xA5;
+    static final int GOTO = 0xA7;
+    static final int TABLESWITCH = 0xAA;
+    static final int RETURN = 0xB1;
+    static final int GETSTATIC = 0xB2;
+    static final int GETFIELD = 0xB4;
+    static final int PUTFIELD = 0xB5;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC = 0xB8;
+    static final int INVOKEINTERFACE = 0xB9;
+    static final int ATHROW = 0xBF;
+    static final int CHECKCAST = 0xC0;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELD = 9;
+    private static final int CONSTANT_METHOD = 10;
+    private static final int CONSTANT_INTERFACE_METHOD = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    static final class Label {
+        private int position = -1;
+    }
+
+    // a jump offset which is written once the label position is known
+    private static final class Fixup {
+        private final Label label;
+        private final int base;
+        private final int at;
+        private final boolean wide;
+
+        private Fixup(Label label, int base, int at, boolean wide) {
+            this.label = label;
+            this.base = base;
+            this.at = at;
+            this.wide = wide;
+        }
+    }
+
+    // catches every throwable between start and end
+    private static final class Handler {
+        private final Label start;
+        private final Label end;
+        private final Label handler;
+
+        private Handler(Label start, Label end, Label handler) {
+            this.start = start;
+            this.end = end;
+            this.handler = handler;
+        }
+    }
+
+    final class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final ArrayList<Fixup> fixups = new ArrayList<>();
+        private final ArrayList<Handler> handlers = new ArrayList<>();
+        private final int access;
+        private final String name;
+        private final String descriptor;
+        private final int maxStack;
+        private final int maxLocals;
+
+        private Code(int access, String name, String descriptor, int maxStack, int maxLocals) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        void op(int opcode) {
+            bytes.write(opcode);
+        }
+
+        void op(int opcode, int u1) {
+            bytes.write(opcode);
+            bytes.write(u1);
+        }
+
+        private void u2(int i) {
+            bytes.write(i >> 8);
+            bytes.write(i);
+        }
+
+        private void u4(int i) {
+            u2(i >> 16);
+            u2(i);
+        }
+
+        void increment(int local, int amount) {
+            op(IINC, local);
+            bytes.write(amount);
+        }
+
+        void constant(int i) {
+            if(i >= -1 && i <= 5) {
+                op(ICONST_0 + i);
+            } else if(i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) {
+                op(BIPUSH, i);
+            } else if(i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(i);
+            } else {
+                op(LDC_W);
+                u2(addInteger(i));
+            }
+        }
+
+        void classOp(int opcode, String owner) {
+            op(opcode);
+            u2(addClass(owner));
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            op(opcode);
+            u2(addMember(CONSTANT_FIELD, owner, name, descriptor));
+        }
+
+        void method(int opcode, String owner, String name, String descriptor) {
+            op(opcode);
+            u2(addMember(CONSTANT_METHOD, owner, name, descriptor));
+        }
+
+        // arguments counts the slots of the arguments including the receiver
+        void interfaceMethod(String owner, String name, String descriptor, int arguments) {
+            op(INVOKEINTERFACE);
+            u2(addMember(CONSTANT_INTERFACE_METHOD, owner, name, descriptor));
+            bytes.write(arguments);
+            bytes.write(0);
+        }
+
+        void jump(int opcode, Label label) {
+            int base = bytes.size();
+            op(opcode);
+            fixups.add(new Fixup(label, base, bytes.size(), false));
+            u2(0);
+        }
+
+        void tableSwitch(int low, Label defaultLabel, Label[] labels) {
+            int base = bytes.size();
+            op(TABLESWITCH);
+            while(bytes.size() % 4 != 0) {
+                bytes.write(0);
+            }
+            fixups.add(new Fixup(defaultLabel, base, bytes.size(), true));
+            u4(0);
+            u4(low);
+            u4(low + labels.length - 1);
+            for(Label label : labels) {
+                fixups.add(new Fixup(label, base, bytes.size(), true));
+                u4(0);
+            }
+        }
+
+        void mark(Label label) {
+            label.position = bytes.size();
+        }
+
+        // the handler starts with the throwable on the stack
+        void catchAll(Label start, Label end, Label handler) {
+            handlers.add(new Handler(start, end, handler));
+        }
+
+        private byte[] toByteArray() {
+            byte[] b = bytes.toByteArray();
+            for(Fixup f : fixups) {
+                if(f.label.position < 0) {
+                    throw new IllegalStateException("jump to unmarked label in " + name);
+                }
+                int offset = f.label.position - f.base;
+                if(f.wide) {
+                    b[f.at] = (byte) (offset >> 24);
+                    b[f.at + 1] = (byte) (offset >> 16);
+                    b[f.at + 2] = (byte) (offset >> 8);
+                    b[f.at + 3] = (byte) offset;
+                } else {
+                    if(offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new IllegalStateException("jump is too far in " + name);
+                    }
+                    b[f.at] = (byte) (offset >> 8);
+                    b[f.at + 1] = (byte) offset;
+                }
+            }
+            return b;
+        }
+    }
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final HashMap<String, Integer> poolIndex = new HashMap<>();
+    private int poolSize = 1;
+    private final ArrayList<Code> methods = new ArrayList<>();
+    private final String name;
+    private final String superName;
+    private final String[] interfaces;
+
+    ClassFileBuilder(String name, String superName, String... interfaces) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+    }
+
+    Code addMethod(int access, String name, String descriptor, int maxStack, int maxLocals) {
+        Code c = new Code(access, name, descriptor, maxStack, maxLocals);
+        methods.add(c);
+        return c;
+    }
+
+    private int addEntry(String key, byte[] entry) {
+        Integer index = poolIndex.get(key);
+        if(index != null) {
+            return index;
+        }
+        pool.write(entry, 0, entry.length);
+        poolIndex.put(key, poolSize);
+        return poolSize++;
+    }
+
+    private static byte[] entry(int tag, int... u2) {
+        byte[] b = new byte[1 + u2.length * 2];
+        b[0] = (byte) tag;
+        for(int i = 0; i < u2.length; i++) {
+            b[1 + i * 2] = (byte) (u2[i] >> 8);
+            b[2 + i * 2] = (byte) u2[i];
+        }
+        return b;
+    }
+
+    private int addUtf8(String s) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeByte(CONSTANT_UTF8);
+            data.writeUTF(s);
+            return addEntry("U" + s, out.toByteArray());
+        } catch(IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private int addInteger(int i) {
+        return addEntry("I" + i, new byte[] {CONSTANT_INTEGER, (byte) (i >> 24), (byte) (i >> 16),
+                (byte) (i >> 8), (byte) i});
+    }
+
+    private int addClass(String s) {
+        int utf8 = addUtf8(s);
+        return addEntry("C" + s, entry(CONSTANT_CLASS, utf8));
+    }
+
+    private int addMember(int tag, String owner, String name, String descriptor) {
+        int c = addClass(owner);
+        int n = addUtf8(name);
+        int d = addUtf8(descriptor);
+        int nameAndType = addEntry("N" + name + " " + descriptor,
+                entry(CONSTANT_NAME_AND_TYPE, n, d));
+        return addEntry(tag + owner + "." + name + descriptor, entry(tag, c, nameAndType));
+    }
+
+    byte[] toByteArray() {
+        // all constants must be in the pool before it is written
+        int thisClass = addClass(name);
+        int superClass = addClass(superName);
+        int[] interfaceIndex = new int[interfaces.length];
+        for(int i = 0; i < interfaces.length; i++) {
+            interfaceIndex[i] = addClass(interfaces[i]);
+        }
+        int codeName = addUtf8("Code");
+        int[][] methodIndex = new int[methods.size()][];
+        for(int i = 0; i < methodIndex.length; i++) {
+            Code c = methods.get(i);
+            methodIndex[i] = new int[] {addUtf8(c.name), addUtf8(c.descriptor)};
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(0xCAFEBABE);
+            data.writeShort(0);
+            data.writeShort(49);
+            data.writeShort(poolSize);
+            pool.writeTo(data);
+            data.writeShort(ACC_FINAL | ACC_SUPER);
+            data.writeShort(thisClass);
+            data.writeShort(superClass);
+            data.writeShort(interfaceIndex.length);
+            for(int i : interfaceIndex) {
+                data.writeShort(i);
+            }
+            data.writeShort(0);
+            data.writeShort(methods.size());
+            for(int i = 0; i < methodIndex.length; i++) {
+                Code c = methods.get(i);
+                byte[] b = c.toByteArray();
+                if(b.length >= 65536) {
+                    throw new IllegalStateException("method " + c.name + " is too large");
+                }
+                data.writeShort(c.access);
+                data.writeShort(methodIndex[i][0]);
+                data.writeShort(methodIndex[i][1]);
+                data.writeShort(1);
+                data.writeShort(codeName);
+                data.writeInt(12 + b.length + 8 * c.handlers.size());
+                data.writeShort(c.maxStack);
+                data.writeShort(c.maxLocals);
+                data.writeInt(b.length);
+                data.write(b);
+                data.writeShort(c.handlers.size());
+                for(Handler h : c.handlers) {
+                    data.writeShort(h.start.position);
+                    data.writeShort(h.end.position);
+                    data.writeShort(h.handler.position);
+                    data.writeShort(0);
+                }
+                data.writeShort(0);
+            }
+            data.writeShort(0);
+            return out.toByteArray();
+        } catch(IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package me.hammerle.snuviscript.code;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import me.hammerle.snuviscript.instructions.CompareBranch;
+import me.hammerle.snuviscript.instructions.Goto;
+import me.hammerle.snuviscript.instructions.IfGoto;
+import me.hammerle.snuviscript.instructions.Instruction;
+
+// builds a new instruction array out of ranges of an old one, every range is kept, replaced by a
+// single instruction or dropped - jumps, labels and functions are moved to the new positions
+final class CodeRewriter {
+    private final Instruction[] code;
+    private final ArrayList<Instruction> pieces = new ArrayList<>();
+    private final ArrayList<int[]> ranges = new ArrayList<>();
+    private int next = 0;
+
+    CodeRewriter(Instruction[] code) {
+        this.code = code;
+    }
+
+    // a jump target t continues execution at t + 1, those positions must start a range
+    static boolean[] findEntries(Instruction[] code, HashMap<String, Integer> labels,
+            HashMap<String, HashMap<String, Integer>> localLabels,
+            HashMap<String, Integer> functions, boolean withIfGoto) {
+        boolean[] entries = new boolean[code.length + 1];
+        for(Instruction instr : code) {
+            if(instr instanceof Goto && (withIfGoto || !(instr instanceof IfGoto))) {
+                mark(entries, ((Goto) instr).getJump() + 1);
+            }
+            if(instr instanceof CompareBranch) {
+                mark(entries, ((CompareBranch) instr).getTrueJump() + 1);
+            }
+        }
+        labels.values().forEach(i -> mark(entries, i + 1));
+        localLabels.values().forEach(map -> map.values().forEach(i -> mark(entries, i + 1)));
+        functions.values().forEach(i -> {
+            mark(entries, i);
+            mark(entries, i + 1);
+        });
+        return entries;
+    }
+
+    private static void mark(boolean[] entries, int index) {
+        if(index >= 0 && index < entries.length) {
+            entries[index] = true;
+        }
+    }
+
+    int getNext() {
+        return next;
+    }
+
+    void keep(int index) {
+        replace(index, index, code[index]);
+    }
+
+    // null drops the range
+    void replace(int start, int end, Instruction instr) {
+        if(start != next || end < start) {
+            throw new IllegalStateException(
+                    String.format("invalid range %d - %d, expected start %d", start, end, next));
+        }
+        ranges.add(new int[] {start, end});
+        pieces.add(instr);
+        next = end + 1;
+    }
+
+    // adds an instruction in front of the next range, it is only reached by falling through,
+    // jumps to the next range skip it
+    void insert(Instruction instr) {
+        ranges.add(null);
+        pieces.add(instr);
+    }
+
+    Instruction[] finish(HashMap<String, Integer> labels,
+            HashMap<String, HashMap<String, Integer>> localLabels,
+            HashMap<String, Integer> functions) {
+        while(next < code.length) {
+            keep(next);
+        }
+        // first new index executed when the old code would continue at the given index
+        int[] newStart = new int[code.length + 1];
+        int size = 0;
+        for(Instruction instr : pieces) {
+            if(instr != null) {
+                size++;
+            }
+        }
+        newStart[code.length] = size;
+        int newIndex = size;
+        for(int i = pieces.size() - 1; i >= 0; i--) {
+            int[] range = ranges.get(i);
+            if(range == null) {
+                newIndex--;
+                continue;
+            }
+            if(pieces.get(i) != null) {
+                newIndex--;
+                newStart[range[0]] = newIndex;
+            } else {
+                newStart[range[0]] = newStart[range[1] + 1];
+            }
+            for(int k = range[0] + 1; k <= range[1]; k++) {
+                newStart[k] = -1;
+            }
+        }
+
+        Instruction[] newCode = new Instruction[size];
+        int index = 0;
+        for(Instruction instr : pieces) {
+            if(instr != null) {
+                newCode[index++] = instr;
+            }
+        }
+        for(int i = 0; i < newCode.length; i++) {
+            if(newCode[i] instanceof Goto) {
+                Goto g = (Goto) newCode[i];
+                g = g.withJump(moveTarget(newStart, g.getJump()));
+                if(g instanceof CompareBranch) {
+                    CompareBranch cb = (CompareBranch) g;
+                    if(cb.getTrueJump() >= 0) {
+                        cb.setTrueJump(moveTarget(newStart, cb.getTrueJump()));
+                    }
+                }
+                newCode[i] = g;
+            }
+        }
+        moveTargets(newStart, labels);
+        localLabels.values().forEach(map -> moveTargets(newStart, map));
+        for(Map.Entry<String, Integer> e : functions.entrySet()) {
+            e.setValue(newStart[e.getValue()]);
+        }
+        return newCode;
+    }
+
+    private static void moveTargets(int[] newStart, HashMap<String, Integer> map) {
+        for(Map.Entry<String, Integer> e : map.entrySet()) {
+            e.setValue(moveTarget(newStart, e.getValue()));
+        }
+    }
+
+    private static int moveTarget(int[] newStart, int target) {
+        int start = newStart[target + 1];
+        if(start < 0) {
+            throw new IllegalStateException(
+                    String.format("jump to %d points into replaced instructions", target));
+        }
+        return start - 1;
+    }
+}
@@ -0,0 +1,8 @@
+package me.hammerle.snuviscript.code;
+
+// implemented by the classes generated by ByteCodeCompiler
+interface CompiledCode {
+    // runs the instructions of the given chunk until the script leaves the chunk, waits, is
+    // held or its time is over, lineIndex always points to the next instruction afterwards
+    public void run(Script sc, int chunk) throws Exception;
+}
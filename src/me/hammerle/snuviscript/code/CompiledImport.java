@@ -1,38 +1,98 @@
 package me.hammerle.snuviscript.code;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.WeakHashMap;
 import me.hammerle.snuviscript.inputprovider.Variable;
+import me.hammerle.snuviscript.instructions.Function;
 import me.hammerle.snuviscript.instructions.Instruction;
+import me.hammerle.snuviscript.tokenizer.TokenBuffer;
+import me.hammerle.snuviscript.tokenizer.Tokenizer;
 
-public class CompiledImport {
-    private final HashMap<String, Integer> functions;
-    private final HashMap<String, Variable> variables;
-    private final HashMap<String, Integer> labels;
-    private final Instruction[] instructions;
-
-    public CompiledImport(HashMap<String, Integer> functions,
-            HashMap<String, Variable> variables,
-            HashMap<String, Integer> labels,
-            Instruction[] instructions) {
-        this.functions = new HashMap<>(functions);
-        this.variables = new HashMap<>(variables);
-        this.labels = new HashMap<>(labels);
-        this.instructions = instructions.clone();
+// one file compiled on its own, its lines start at 1 and its jumps, labels and functions at 0,
+// calls of functions from other files are checked once the modules are linked
+final class CompiledImport {
+    private final String content;
+    // a program image without header, see ProgramImage.link
+    private final byte[] image;
+    private final int lines;
+    // every called function, also the folded and fused ones
+    private final NamedFunction[] calls;
+    // the code linked as first module or behind the linked modules before, guarded by this,
+    // a key is dropped once its modules are compiled again
+    private ProgramImage.Linked first = null;
+    private final WeakHashMap<ProgramImage.Linked, ProgramImage.Linked> next =
+            new WeakHashMap<>();
+
+    private CompiledImport(String content, byte[] image, int lines, NamedFunction[] calls) {
+        this.content = content;
+        this.image = image;
+        this.lines = lines;
+        this.calls = calls;
+    }
+
+    static CompiledImport compile(String file, String content) {
+        Tokenizer t = new Tokenizer();
+        TokenBuffer tokens = t.tokenize(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)));
+        HashMap<String, Integer> labels = new HashMap<>();
+        HashMap<String, HashMap<String, Integer>> localLabels = new HashMap<>();
+        HashMap<String, Variable> vars = new HashMap<>();
+        HashMap<String, Integer> functions = new HashMap<>();
+        Compiler c = new Compiler();
+        c.setValidationEnabled(false);
+        Instruction[] compiled = c.compile(tokens, labels, vars, functions, localLabels);
+        Set<NamedFunction> calls = new HashSet<>();
+        for(Instruction instr : compiled) {
+            if(instr instanceof Function) {
+                calls.add(((Function) instr).getFunction());
+            }
+        }
+        compiled = new ConstantFolding().fold(compiled, labels, localLabels, functions);
+        compiled = new PeepholeOptimizer().optimize(compiled, labels, localLabels, functions);
+        InstructionFusion fusion = new InstructionFusion();
+        compiled = fusion.fuse(compiled, labels, localLabels, functions);
+        ProgramImage image = new ProgramImage(compiled, labels, localLabels, vars, functions,
+                fusion.getStatistics(),
+                new SourceMap(Collections.singletonList(file), new int[] {1}));
+        return new CompiledImport(content, image.toModule(), t.getLastLine(),
+                calls.toArray(new NamedFunction[calls.size()]));
     }
 
-    public HashMap<String, Integer> getFunctions() {
-        return functions;
+    boolean isCompiledFrom(String content) {
+        return this.content.equals(content);
     }
 
-    public HashMap<String, Variable> getVariables() {
-        return variables;
+    // false once a host registered another function under a called name
+    boolean isCurrent() {
+        for(NamedFunction f : calls) {
+            if(FunctionRegistry.getFunction(f.getName()) != f) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    public HashMap<String, Integer> getLabels() {
-        return labels;
+    // previous is null for the first module, programs importing the same files up to this one
+    // get the same instructions
+    synchronized ProgramImage.Linked link(ProgramImage.Linked previous, int lineOffset) {
+        ProgramImage.Linked linked = previous == null ? first : next.get(previous);
+        if(linked == null) {
+            linked = ProgramImage.Linked.link(previous, image, lineOffset);
+            if(previous == null) {
+                first = linked;
+            } else {
+                next.put(previous, linked);
+            }
+        }
+        return linked;
     }
 
-    public Instruction[] getInstructions() {
-        return instructions;
+    // the next file starts this many lines later
+    int getLines() {
+        return lines;
     }
 }
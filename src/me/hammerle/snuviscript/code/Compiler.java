@@ -11,13 +11,15 @@ import me.hammerle.snuviscript.inputprovider.ConstantDouble;
 import me.hammerle.snuviscript.inputprovider.ConstantNull;
 import me.hammerle.snuviscript.inputprovider.ConstantString;
 import me.hammerle.snuviscript.exceptions.PreScriptException;
-import me.hammerle.snuviscript.tokenizer.Token;
+import me.hammerle.snuviscript.tokenizer.TokenBuffer;
 import me.hammerle.snuviscript.tokenizer.TokenType;
 import static me.hammerle.snuviscript.tokenizer.TokenType.*;
 import me.hammerle.snuviscript.inputprovider.LocalVariable;
 import me.hammerle.snuviscript.inputprovider.Variable;
+import me.hammerle.snuviscript.instructions.ArithmeticFunction;
 import me.hammerle.snuviscript.instructions.Array;
 import me.hammerle.snuviscript.instructions.Break;
+import me.hammerle.snuviscript.instructions.CompareFunction;
 import me.hammerle.snuviscript.instructions.Constant;
 import me.hammerle.snuviscript.instructions.Continue;
 import me.hammerle.snuviscript.instructions.Else;
@@ -35,13 +37,14 @@ import me.hammerle.snuviscript.instructions.While;
 
 public class Compiler {
     private int index = 0;
-    private Token[] tokens = null;
+    private TokenBuffer tokens = null;
     private final ArrayList<Instruction> instr = new ArrayList<>();
 
     private HashMap<String, Integer> labels = null;
     private HashMap<String, HashMap<String, Integer>> localLabels = null;
     private HashMap<String, Variable> vars = null;
     private final HashMap<String, LocalVariable> localVars = new HashMap<>();
+    private int localSlots = 0;
     private HashMap<String, Integer> functions = null;
 
     private final Stack<Break> breakStack = new Stack<>();
@@ -63,7 +66,17 @@ public class Compiler {
     }
 
     private void addFunction(int line, int args, String name) {
-        instr.add(new Function(line, args, FunctionRegistry.getFunction(name)));
+        NamedFunction f = FunctionRegistry.getFunction(name);
+        // the operators are inlined, functions of a host are called as they are
+        if(!FunctionRegistry.isBuiltin(f)) {
+            instr.add(new Function(line, args, f));
+        } else if(ArithmeticFunction.isSupported(f.getName(), args)) {
+            instr.add(new ArithmeticFunction(line, args, f));
+        } else if(CompareFunction.isSupported(f.getName(), args)) {
+            instr.add(new CompareFunction(line, args, f));
+        } else {
+            instr.add(new Function(line, args, f));
+        }
     }
 
     private void addGoto(int line, int jump) {
@@ -86,15 +99,15 @@ public class Compiler {
         if(isAtEnd()) {
             if(notEOF) {
                 throw new PreScriptException(
-                        String.format("expected %s got %s", type, peek().getType()),
-                        peek().getLine());
+                        String.format("expected %s got %s", type, tokens.getType(peek())),
+                        tokens.getLine(peek()));
             }
             return false;
         }
-        return peek().getType() == type;
+        return tokens.getType(peek()) == type;
     }
 
-    private Token advance() {
+    private int advance() {
         if(!isAtEnd()) {
             index++;
         }
@@ -102,23 +115,24 @@ public class Compiler {
     }
 
     private boolean isAtEnd() {
-        return peek().getType() == EOF;
+        return tokens.getType(peek()) == EOF;
     }
 
-    private Token peek() {
-        return tokens[index];
+    private int peek() {
+        return index;
     }
 
-    private Token previous() {
-        return tokens[index - 1];
+    private int previous() {
+        return index - 1;
     }
 
-    private Token consume(TokenType type) {
+    private int consume(TokenType type) {
         if(check(type, false)) {
             return advance();
         }
-        throw new PreScriptException(String.format("expected %s got %s", type, peek().getType()),
-                peek().getLine());
+        throw new PreScriptException(
+                String.format("expected %s got %s", type, tokens.getType(peek())),
+                tokens.getLine(peek()));
     }
 
     private void noReturnForLastFunction() {
@@ -127,7 +141,7 @@ public class Compiler {
         }
     }
 
-    public Instruction[] compile(Token[] tokens, HashMap<String, Integer> labels,
+    public Instruction[] compile(TokenBuffer tokens, HashMap<String, Integer> labels,
             HashMap<String, Variable> vars, HashMap<String, Integer> functions,
             HashMap<String, HashMap<String, Integer>> localLabels) {
         this.tokens = tokens;
@@ -187,16 +201,16 @@ public class Compiler {
     }
 
     private int getCurrentLine() {
-        if(index > 0 && index <= tokens.length) {
-            return tokens[Math.min(index - 1, tokens.length - 1)].getLine();
+        if(index > 0 && index <= tokens.size()) {
+            return tokens.getLine(Math.min(index - 1, tokens.size() - 1));
         }
         return -1;
     }
 
     private void line() {
         int oldIndex = index;
-        Token t = advance();
-        switch(t.getType()) {
+        int t = advance();
+        switch(tokens.getType(t)) {
             case LABEL:
                 handleLabel();
                 break;
@@ -209,13 +223,13 @@ public class Compiler {
                 handleFor();
                 break;
             case BREAK:
-                Break b = new Break(previous().getLine());
+                Break b = new Break(tokens.getLine(previous()));
                 breakStack.add(b);
                 instr.add(b);
                 consume(SEMICOLON);
                 break;
             case CONTINUE:
-                Continue c = new Continue(previous().getLine());
+                Continue c = new Continue(tokens.getLine(previous()));
                 continueStack.add(c);
                 instr.add(c);
                 consume(SEMICOLON);
@@ -234,7 +248,7 @@ public class Compiler {
                 lineExpression = false;
                 expression();
                 if(!lineExpression) {
-                    throw new PreScriptException("missing statement", t.getLine());
+                    throw new PreScriptException("missing statement", tokens.getLine(t));
                 }
                 consume(SEMICOLON);
         }
@@ -242,7 +256,7 @@ public class Compiler {
     }
 
     private void handleLabel() {
-        String name = previous().getData().toString();
+        String name = tokens.getString(previous());
         name = name.substring(1); // cut off @ at start
         if(inFunction != null) {
             HashMap<String, Integer> llabel = localLabels.get(inFunction);
@@ -257,10 +271,10 @@ public class Compiler {
     }
 
     private void handleIf() {
-        Token t = previous();
+        int t = previous();
         consume(OPEN_BRACKET);
         expression();
-        If i = new If(t.getLine());
+        If i = new If(tokens.getLine(t));
         instr.add(i);
         consume(CLOSE_BRACKET);
         consume(OPEN_CURVED_BRACKET);
@@ -274,10 +288,10 @@ public class Compiler {
 
     private void handleElseIf() {
         while(match(false, ELSEIF)) {
-            Token t = previous();
+            int t = previous();
             consume(OPEN_BRACKET);
             expression();
-            ElseIf e = new ElseIf(t.getLine());
+            ElseIf e = new ElseIf(tokens.getLine(t));
             instr.add(e);
             consume(CLOSE_BRACKET);
             consume(OPEN_CURVED_BRACKET);
@@ -291,7 +305,7 @@ public class Compiler {
 
     private void handleElse() {
         if(match(false, ELSE)) {
-            Else e = new Else(previous().getLine());
+            Else e = new Else(tokens.getLine(previous()));
             instr.add(e);
             consume(OPEN_CURVED_BRACKET);
             while(!match(true, CLOSE_CURVED_BRACKET)) {
@@ -302,7 +316,7 @@ public class Compiler {
     }
 
     private void handleFor() {
-        Token t = previous();
+        int t = previous();
         consume(OPEN_BRACKET);
         if(!match(false, SEMICOLON)) {
             expression();
@@ -334,7 +348,7 @@ public class Compiler {
 
         int forStart = instr.size() - 1;
         forGoto.setJump(forStart);
-        For f = new For(t.getLine());
+        For f = new For(tokens.getLine(t));
         instr.add(f);
         consume(OPEN_CURVED_BRACKET);
         while(!match(true, CLOSE_CURVED_BRACKET)) {
@@ -360,20 +374,20 @@ public class Compiler {
 
     private void handleUserFunction() {
         consume(LITERAL);
-        Token t = previous();
+        int t = previous();
         consume(OPEN_BRACKET);
         ArrayList<String> list = new ArrayList<>();
         if(!match(false, CLOSE_BRACKET)) {
             while(true) {
                 consume(LITERAL);
-                list.add(previous().getData().toString());
+                list.add(tokens.getString(previous()));
                 if(match(false, CLOSE_BRACKET)) {
                     break;
                 }
                 consume(COMMA);
             }
         }
-        String name = t.getData().toString().toLowerCase();
+        String name = tokens.getString(t).toLowerCase();
 
         // Track user-defined function for validation
         if(enableValidation) {
@@ -381,36 +395,43 @@ public class Compiler {
         }
 
         UserFunction uf =
-                new UserFunction(t.getLine(), name, list.toArray(new String[list.size()]));
+                new UserFunction(tokens.getLine(t), name, list.toArray(new String[list.size()]));
         functions.put(name, instr.size());
         instr.add(uf);
         consume(OPEN_CURVED_BRACKET);
         inFunction = name;
+        // arguments occupy the first slots of the frame in declaration order
+        localVars.clear();
+        localSlots = 0;
+        for(String arg : list) {
+            localVars.put(arg, new LocalVariable(arg, localSlots++));
+        }
         while(!match(true, CLOSE_CURVED_BRACKET)) {
             line();
         }
         inFunction = null;
+        uf.setLocals(localSlots);
         instr.add(new Return(instr.get(instr.size() - 1).getLine(), 0));
         uf.setJump(instr.size() - 1);
     }
 
     private void handleReturn() {
-        Token t = previous();
+        int t = previous();
         int args = 0;
         if(!match(false, SEMICOLON)) {
             args = 1;
             expression();
             consume(SEMICOLON);
         }
-        instr.add(new Return(t.getLine(), args));
+        instr.add(new Return(tokens.getLine(t), args));
     }
 
     private void handleWhile() {
         int whileStart = instr.size() - 1;
-        Token t = previous();
+        int t = previous();
         consume(OPEN_BRACKET);
         expression();
-        While w = new While(t.getLine());
+        While w = new While(tokens.getLine(t));
         instr.add(w);
         consume(CLOSE_BRACKET);
         consume(OPEN_CURVED_BRACKET);
@@ -426,8 +447,8 @@ public class Compiler {
     private void expression() {
         if(isAtEnd()) {
             throw new PreScriptException(
-                    String.format("expected expression got %s", peek().getType()),
-                    peek().getLine());
+                    String.format("expected expression got %s", tokens.getType(peek())),
+                    tokens.getLine(peek()));
         }
         assignment();
     }
@@ -436,9 +457,9 @@ public class Compiler {
         logicalOr();
         if(match(false, SET, ADD_SET, SUB_SET, MUL_SET, DIV_SET, MOD_SET, LEFT_SHIFT_SET,
                 RIGHT_SHIFT_SET, BIT_AND_SET, BIT_XOR_SET, BIT_OR_SET)) {
-            Token t = previous();
+            int t = previous();
             assignment();
-            addFunction(t.getLine(), 2, t.getType().getName());
+            addFunction(tokens.getLine(t), 2, tokens.getType(t).getName());
             lineExpression = true;
         }
     }
@@ -446,69 +467,69 @@ public class Compiler {
     private void logicalOr() {
         logicalAnd();
         while(match(false, OR)) {
-            Token t = previous();
-            IfGoto ifGoto = new IfGoto(t.getLine(), true);
+            int t = previous();
+            IfGoto ifGoto = new IfGoto(tokens.getLine(t), true);
             instr.add(ifGoto);
             logicalAnd();
             ifGoto.setJump(instr.size());
-            addFunction(t.getLine(), 2, t.getType().getName());
+            addFunction(tokens.getLine(t), 2, tokens.getType(t).getName());
         }
     }
 
     private void logicalAnd() {
         equality();
         while(match(false, AND)) {
-            Token t = previous();
-            IfGoto ifGoto = new IfGoto(t.getLine(), false);
+            int t = previous();
+            IfGoto ifGoto = new IfGoto(tokens.getLine(t), false);
             instr.add(ifGoto);
             equality();
             ifGoto.setJump(instr.size());
-            addFunction(t.getLine(), 2, t.getType().getName());
+            addFunction(tokens.getLine(t), 2, tokens.getType(t).getName());
         }
     }
 
     private void equality() {
         comparison();
         while(match(false, EQUAL, NOT_EQUAL)) {
-            Token t = previous();
+            int t = previous();
             comparison();
-            addFunction(t.getLine(), 2, t.getType().getName());
+            addFunction(tokens.getLine(t), 2, tokens.getType(t).getName());
         }
     }
 
     private void comparison() {
         addition();
         while(match(false, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-            Token t = previous();
+            int t = previous();
             addition();
-            addFunction(t.getLine(), 2, t.getType().getName());
+            addFunction(tokens.getLine(t), 2, tokens.getType(t).getName());
         }
     }
 
     private void addition() {
         multiplication();
         while(match(false, SUB, ADD)) {
-            Token t = previous();
+            int t = previous();
             multiplication();
-            addFunction(t.getLine(), 2, t.getType().getName());
+            addFunction(tokens.getLine(t), 2, tokens.getType(t).getName());
         }
     }
 
     private void multiplication() {
         unary();
         while(match(false, DIV, MUL, MOD)) {
-            Token t = previous();
+            int t = previous();
             unary();
-            addFunction(t.getLine(), 2, t.getType().getName());
+            addFunction(tokens.getLine(t), 2, tokens.getType(t).getName());
         }
     }
 
     private void unary() {
         if(match(false, INVERT, BIT_INVERT, SUB, INC, DEC)) {
-            Token t = previous();
+            int t = previous();
             unary();
-            addFunction(t.getLine(), 1, t.getType().getName());
-            if(t.getType() == INC || t.getType() == DEC) {
+            addFunction(tokens.getLine(t), 1, tokens.getType(t).getName());
+            if(tokens.getType(t) == INC || tokens.getType(t) == DEC) {
                 lineExpression = true;
             }
             return;
@@ -519,32 +540,33 @@ public class Compiler {
     private void postUnary() {
         primary();
         while(match(false, INC, DEC)) {
-            Token t = previous();
-            addFunction(t.getLine(), 1, "p" + t.getType().getName());
+            int t = previous();
+            addFunction(tokens.getLine(t), 1, "p" + tokens.getType(t).getName());
             lineExpression = true;
         }
     }
 
     private void primary() {
-        Token t = advance();
-        switch(t.getType()) {
+        int t = advance();
+        switch(tokens.getType(t)) {
             case FALSE:
-                addConstant(t.getLine(), ConstantBoolean.FALSE);
+                addConstant(tokens.getLine(t), ConstantBoolean.FALSE);
                 return;
             case TRUE:
-                addConstant(t.getLine(), ConstantBoolean.TRUE);
+                addConstant(tokens.getLine(t), ConstantBoolean.TRUE);
                 return;
             case NULL:
-                addConstant(t.getLine(), ConstantNull.NULL);
+                addConstant(tokens.getLine(t), ConstantNull.NULL);
                 return;
             case STRING:
-                addConstant(t.getLine(), new ConstantString(t.getData().toString()));
+                addConstant(tokens.getLine(t), new ConstantString(tokens.getString(t)));
                 return;
             case LABEL:
-                addConstant(t.getLine(), new ConstantString(t.getData().toString().substring(1)));
+                addConstant(tokens.getLine(t),
+                        new ConstantString(tokens.getString(t).substring(1)));
                 return;
             case NUMBER:
-                addConstant(t.getLine(), new ConstantDouble((Double) t.getData()));
+                addConstant(tokens.getLine(t), new ConstantDouble(tokens.getNumber(t)));
                 return;
             case OPEN_BRACKET:
                 expression();
@@ -556,17 +578,17 @@ public class Compiler {
                 } else if(match(false, OPEN_BRACKET)) {
                     handleFunction(t);
                 } else {
-                    addConstant(t.getLine(), getVariable(t.getData().toString()));
+                    addConstant(tokens.getLine(t), getVariable(tokens.getString(t)));
                 }
                 return;
             default:
         }
-        throw new PreScriptException(String.format("unexpected token %s", t.getType()),
-                t.getLine());
+        throw new PreScriptException(String.format("unexpected token %s", tokens.getType(t)),
+                tokens.getLine(t));
     }
 
-    public void handleFunction(Token t) {
-        String functionName = t.getData().toString().toLowerCase();
+    public void handleFunction(int t) {
+        String functionName = tokens.getString(t).toLowerCase();
 
         // Track function usage for validation
         if(enableValidation) {
@@ -574,7 +596,7 @@ public class Compiler {
         }
 
         int args = 0;
-        if(peek().getType() != CLOSE_BRACKET) {
+        if(tokens.getType(peek()) != CLOSE_BRACKET) {
             while(true) {
                 args++;
                 expression();
@@ -586,13 +608,13 @@ public class Compiler {
         } else {
             consume(CLOSE_BRACKET);
         }
-        addFunction(t.getLine(), args, functionName);
+        addFunction(tokens.getLine(t), args, functionName);
         lineExpression = true;
     }
 
-    public void handleArray(Token t) {
-        if(peek().getType() == CLOSE_SQUARE_BRACKET) {
-            throw new PreScriptException("empty array access", peek().getLine());
+    public void handleArray(int t) {
+        if(tokens.getType(peek()) == CLOSE_SQUARE_BRACKET) {
+            throw new PreScriptException("empty array access", tokens.getLine(peek()));
         }
         int args = 0;
         while(true) {
@@ -603,7 +625,7 @@ public class Compiler {
             }
             consume(COMMA);
         }
-        instr.add(new Array(t.getLine(), args, getVariable(t.getData().toString())));
+        instr.add(new Array(tokens.getLine(t), args, getVariable(tokens.getString(t))));
     }
 
     private Variable getVariable(String name) {
@@ -613,7 +635,7 @@ public class Compiler {
             if(v != null) {
                 return v;
             }
-            v = new LocalVariable(name);
+            v = new LocalVariable(name, localSlots++);
             localVars.put(name, v);
             return v;
         }
@@ -626,55 +648,8 @@ public class Compiler {
         if(v != null) {
             return v;
         }
-        v = new Variable(name);
+        v = new Variable(name, vars.size());
         vars.put(name, v);
         return v;
     }
-
-    public CompiledImport compileImport(Token[] tokens) {
-        // Temporarily disable validation for imports
-        boolean originalValidation = this.enableValidation;
-        this.enableValidation = false;
-
-        try {
-            this.tokens = tokens;
-            index = 0;
-            instr.clear();
-
-            // Create temporary containers for import
-            HashMap<String, Integer> importLabels = new HashMap<>();
-            HashMap<String, Variable> importVars = new HashMap<>();
-            HashMap<String, Integer> importFunctions = new HashMap<>();
-            HashMap<String, HashMap<String, Integer>> importLocalLabels = new HashMap<>();
-
-            this.labels = importLabels;
-            this.localLabels = importLocalLabels;
-            this.vars = importVars;
-            this.functions = importFunctions;
-            localVars.clear();
-            inFunction = null;
-
-            while(!isAtEnd()) {
-                line();
-            }
-
-            // Convert instruction list to array
-            Instruction[] importInstructions = instr.toArray(new Instruction[instr.size()]);
-
-            // Clean up
-            this.tokens = null;
-            this.labels = null;
-            this.vars = null;
-            this.functions = null;
-            localVars.clear();
-            instr.clear();
-
-            return new CompiledImport(importFunctions, importVars, importLabels,
-                    importInstructions);
-
-        } finally {
-            // Restore original validation setting
-            this.enableValidation = originalValidation;
-        }
-    }
 }
@@ -0,0 +1,173 @@
+package me.hammerle.snuviscript.code;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import me.hammerle.snuviscript.inputprovider.ConstantBoolean;
+import me.hammerle.snuviscript.inputprovider.ConstantDouble;
+import me.hammerle.snuviscript.inputprovider.ConstantString;
+import me.hammerle.snuviscript.inputprovider.FoldedValue;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+import me.hammerle.snuviscript.instructions.ArithmeticFunction;
+import me.hammerle.snuviscript.instructions.CompareFunction;
+import me.hammerle.snuviscript.instructions.Constant;
+import me.hammerle.snuviscript.instructions.EndIf;
+import me.hammerle.snuviscript.instructions.Function;
+import me.hammerle.snuviscript.instructions.Goto;
+import me.hammerle.snuviscript.instructions.If;
+import me.hammerle.snuviscript.instructions.Instruction;
+import me.hammerle.snuviscript.instructions.While;
+
+// evaluates pure functions with constant arguments and removes branches on constant conditions
+final class ConstantFolding {
+    // a run of instructions which pushes a single constant
+    private static class Item {
+        private final int start;
+        private final int end;
+        private final InputProvider value;
+
+        private Item(int start, int end, InputProvider value) {
+            this.start = start;
+            this.end = end;
+            this.value = value;
+        }
+    }
+
+    private final ArrayList<Item> items = new ArrayList<>();
+    private Instruction[] code;
+    private CodeRewriter rewriter;
+    // the values of pure functions do not depend on the script, they get one without code,
+    // variables or manager
+    private Script context = null;
+
+    Instruction[] fold(Instruction[] code, HashMap<String, Integer> labels,
+            HashMap<String, HashMap<String, Integer>> localLabels,
+            HashMap<String, Integer> functions) {
+        this.code = code;
+        boolean[] entries = CodeRewriter.findEntries(code, labels, localLabels, functions, true);
+        rewriter = new CodeRewriter(code);
+        items.clear();
+        for(int i = 0; i < code.length; i++) {
+            if(entries[i]) {
+                flush();
+            }
+            Instruction instr = code[i];
+            InputProvider c = getConstant(instr);
+            if(c != null) {
+                items.add(new Item(i, i, c));
+            } else if(!foldFunction(i, instr) && !foldBranch(i, instr)) {
+                flush();
+                rewriter.keep(i);
+            }
+        }
+        flush();
+        Instruction[] newCode = rewriter.finish(labels, localLabels, functions);
+        this.code = null;
+        rewriter = null;
+        return newCode;
+    }
+
+    private Script getContext() {
+        if(context == null) {
+            Program empty = new Program(new String[0], new Instruction[0], null,
+                    ExecutionEngine.STACK, new HashMap<>(), new HashMap<>(), new HashMap<>(),
+                    new HashMap<>(), new HashMap<>(),
+                    new SourceMap(Collections.emptyList(), new int[0]),
+                    Collections.emptyList());
+            context = new Script(null, null, "constant folding", empty);
+        }
+        return context;
+    }
+
+    private void flush() {
+        for(Item item : items) {
+            if(item.start == item.end) {
+                rewriter.keep(item.start);
+            } else {
+                rewriter.replace(item.start, item.end,
+                        new Constant(code[item.end].getLine(), item.value));
+            }
+        }
+        items.clear();
+    }
+
+    private static InputProvider getConstant(Instruction instr) {
+        if(instr.getClass() != Constant.class) {
+            return null;
+        }
+        InputProvider in = ((Constant) instr).getConstant();
+        Class<?> c = in.getClass();
+        if(c == ConstantDouble.class || c == ConstantString.class || c == ConstantBoolean.class
+                || c == FoldedValue.class) {
+            return in;
+        }
+        return null;
+    }
+
+    private boolean foldFunction(int index, Instruction instr) {
+        Class<?> c = instr.getClass();
+        if(c != Function.class && c != ArithmeticFunction.class && c != CompareFunction.class) {
+            return false;
+        }
+        NamedFunction f = ((Function) instr).getFunction();
+        int arguments = instr.getArguments();
+        if(!f.isPure() || items.size() < arguments) {
+            return false;
+        }
+        InputProvider[] in = new InputProvider[arguments];
+        for(int i = 0; i < arguments; i++) {
+            in[i] = items.get(items.size() - arguments + i).value;
+        }
+        Object o;
+        try {
+            o = f.execute(getContext(), in);
+        } catch(Exception ex) {
+            // the error is reported when the script runs
+            return false;
+        }
+        if(!(o instanceof Double) && !(o instanceof String) && !(o instanceof Boolean)) {
+            return false;
+        }
+        int start = arguments == 0 ? index : items.get(items.size() - arguments).start;
+        for(int i = 0; i < arguments; i++) {
+            items.remove(items.size() - 1);
+        }
+        if(instr.shouldNotReturnValue()) {
+            flush();
+            rewriter.replace(start, index, null);
+        } else {
+            items.add(new Item(start, index, new FoldedValue(o)));
+        }
+        return true;
+    }
+
+    private boolean foldBranch(int index, Instruction instr) {
+        Class<?> c = instr.getClass();
+        if((c != If.class && c != While.class) || items.isEmpty()) {
+            return false;
+        }
+        Item item = items.get(items.size() - 1);
+        Object o = item.value.get(null);
+        if(!(o instanceof Boolean)) {
+            return false;
+        }
+        Goto branch = (Goto) instr;
+        if(c == If.class) {
+            // an else or else if would read the state set by the if
+            int next = branch.getJump() + 1;
+            if(next >= code.length || code[next].getClass() != EndIf.class) {
+                return false;
+            }
+        }
+        items.remove(items.size() - 1);
+        flush();
+        if((Boolean) o) {
+            rewriter.replace(item.start, index, null);
+        } else {
+            Goto g = new Goto(instr.getLine(), 0);
+            g.setJump(branch.getJump());
+            rewriter.replace(item.start, index, g);
+        }
+        return true;
+    }
+}
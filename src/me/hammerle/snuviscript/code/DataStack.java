@@ -0,0 +1,150 @@
+package me.hammerle.snuviscript.code;
+
+import java.util.Arrays;
+import me.hammerle.snuviscript.inputprovider.ArrayReturnWrapper;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+import me.hammerle.snuviscript.inputprovider.ReturnWrapper;
+
+public final class DataStack {
+    private static final int START_SIZE = 16;
+
+    // reusable views on the number lane, one per stack slot
+    private final class NumberSlot extends InputProvider {
+        private final int index;
+
+        private NumberSlot(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Object get(Script sc) {
+            return numbers[index];
+        }
+
+        @Override
+        public double getDouble(Script sc) {
+            return numbers[index];
+        }
+
+        @Override
+        public boolean isDouble(Script sc) {
+            return true;
+        }
+
+        @Override
+        public String getString(Script sc) {
+            return String.valueOf(numbers[index]);
+        }
+
+        @Override
+        public boolean getBoolean(Script sc) {
+            return (Boolean) get(sc);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ReturnWrapper(%s)", numbers[index]);
+        }
+    }
+
+    private InputProvider[] data = new InputProvider[START_SIZE];
+    private double[] numbers = new double[START_SIZE];
+    private NumberSlot[] slots = new NumberSlot[START_SIZE];
+    // result wrappers are owned by the slot instead of the instruction, so compiled code does
+    // not carry any state of the script executing it
+    private ReturnWrapper[] values = new ReturnWrapper[START_SIZE];
+    private ArrayReturnWrapper[] elements = new ArrayReturnWrapper[START_SIZE];
+    private int size = 0;
+
+    private void ensureCapacity() {
+        if(size < data.length) {
+            return;
+        }
+        int newSize = data.length * 2;
+        data = Arrays.copyOf(data, newSize);
+        numbers = Arrays.copyOf(numbers, newSize);
+        slots = Arrays.copyOf(slots, newSize);
+        values = Arrays.copyOf(values, newSize);
+        elements = Arrays.copyOf(elements, newSize);
+    }
+
+    public void push(InputProvider in) {
+        ensureCapacity();
+        data[size++] = in;
+    }
+
+    public void pushDouble(double d) {
+        ensureCapacity();
+        NumberSlot slot = slots[size];
+        if(slot == null) {
+            slot = new NumberSlot(size);
+            slots[size] = slot;
+        }
+        numbers[size] = d;
+        data[size++] = slot;
+    }
+
+    public void pushValue(Object o) {
+        ensureCapacity();
+        ReturnWrapper wrapper = values[size];
+        if(wrapper == null) {
+            wrapper = new ReturnWrapper();
+            values[size] = wrapper;
+        }
+        wrapper.setValue(o);
+        data[size++] = wrapper;
+    }
+
+    public void pushArrayElement(Object array, int index) {
+        ensureCapacity();
+        ArrayReturnWrapper wrapper = elements[size];
+        if(wrapper == null) {
+            wrapper = new ArrayReturnWrapper();
+            elements[size] = wrapper;
+        }
+        wrapper.setValue(array, index);
+        data[size++] = wrapper;
+    }
+
+    public InputProvider pop() {
+        if(size <= 0) {
+            throw new IllegalStateException("data stack is empty");
+        }
+        InputProvider in = data[--size];
+        data[size] = null;
+        return in;
+    }
+
+    public InputProvider peek() {
+        if(size <= 0) {
+            throw new IllegalStateException("data stack is empty");
+        }
+        return data[size - 1];
+    }
+
+    public void clear() {
+        Arrays.fill(data, 0, size, null);
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for(int i = 0; i < size; i++) {
+            if(i > 0) {
+                sb.append(", ");
+            }
+            sb.append(data[i]);
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package me.hammerle.snuviscript.code;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// the scripts which loaded each event in the order they loaded it, the arrays are copied when a
+// script loads or unloads an event, so a dispatch reads them without locks or allocations and
+// skips the scripts which are not waiting, the loaded events of each script are kept as well so
+// removing a script only touches its own events
+final class EventIndex {
+    private static final Script[] EMPTY = new Script[0];
+
+    private final ConcurrentHashMap<String, Script[]> subscribers = new ConcurrentHashMap<>();
+    // guarded by this, as are the changes of the arrays
+    private final HashMap<Script, Set<String>> events = new HashMap<>();
+
+    Script[] get(String event) {
+        return subscribers.getOrDefault(event, EMPTY);
+    }
+
+    synchronized void add(String event, Script sc) {
+        if(events.computeIfAbsent(sc, k -> new HashSet<>()).add(event)) {
+            Script[] scripts = get(event);
+            scripts = Arrays.copyOf(scripts, scripts.length + 1);
+            scripts[scripts.length - 1] = sc;
+            subscribers.put(event, scripts);
+        }
+    }
+
+    synchronized void remove(String event, Script sc) {
+        Set<String> own = events.get(sc);
+        if(own == null || !own.remove(event)) {
+            return;
+        }
+        if(own.isEmpty()) {
+            events.remove(sc);
+        }
+        removeSubscriber(event, sc);
+    }
+
+    synchronized void remove(Script sc) {
+        Set<String> own = events.remove(sc);
+        if(own != null) {
+            own.forEach(event -> removeSubscriber(event, sc));
+        }
+    }
+
+    synchronized void clear() {
+        events.clear();
+        subscribers.clear();
+    }
+
+    private void removeSubscriber(String event, Script sc) {
+        Script[] scripts = get(event);
+        for(int i = 0; i < scripts.length; i++) {
+            if(scripts[i] == sc) {
+                if(scripts.length == 1) {
+                    subscribers.remove(event);
+                    return;
+                }
+                Script[] copy = new Script[scripts.length - 1];
+                System.arraycopy(scripts, 0, copy, 0, i);
+                System.arraycopy(scripts, i + 1, copy, i, copy.length - i);
+                subscribers.put(event, copy);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package me.hammerle.snuviscript.code;
+
+public enum ExecutionEngine {
+    // every instruction works on the data stack
+    STACK,
+    // expressions are evaluated as trees of nodes without using the data stack
+    TREE,
+    // tree expressions plus the remaining instructions are compiled into a jvm class
+    COMPILED
+}
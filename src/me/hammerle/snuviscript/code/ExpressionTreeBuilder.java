@@ -0,0 +1,185 @@
+package me.hammerle.snuviscript.code;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import me.hammerle.snuviscript.instructions.ArithmeticFunction;
+import me.hammerle.snuviscript.instructions.Array;
+import me.hammerle.snuviscript.instructions.CompareFunction;
+import me.hammerle.snuviscript.instructions.Constant;
+import me.hammerle.snuviscript.instructions.Expression;
+import me.hammerle.snuviscript.instructions.Function;
+import me.hammerle.snuviscript.instructions.IfGoto;
+import me.hammerle.snuviscript.instructions.Instruction;
+import me.hammerle.snuviscript.tree.ArithmeticNode;
+import me.hammerle.snuviscript.tree.ArrayNode;
+import me.hammerle.snuviscript.tree.CompareNode;
+import me.hammerle.snuviscript.tree.FunctionNode;
+import me.hammerle.snuviscript.tree.LogicNode;
+import me.hammerle.snuviscript.tree.Node;
+import me.hammerle.snuviscript.tree.ValueNode;
+
+// replaces runs of stack instructions with expression trees, user functions and functions which
+// change the control flow stay on the stack because they need to leave the current instruction
+final class ExpressionTreeBuilder {
+    private static class Item {
+        private final int start;
+        private final int end;
+        // null for an if goto waiting for the right side of && or ||
+        private final Node node;
+        private final Instruction last;
+
+        private Item(int start, int end, Node node, Instruction last) {
+            this.start = start;
+            this.end = end;
+            this.node = node;
+            this.last = last;
+        }
+    }
+
+    private final ArrayList<Item> items = new ArrayList<>();
+    private Instruction[] code;
+    private boolean[] entries;
+    private CodeRewriter rewriter;
+    private int ids = 0;
+
+    Instruction[] build(Instruction[] code, HashMap<String, Integer> labels,
+            HashMap<String, HashMap<String, Integer>> localLabels,
+            HashMap<String, Integer> functions) {
+        this.code = code;
+        entries = CodeRewriter.findEntries(code, labels, localLabels, functions, false);
+        rewriter = new CodeRewriter(code);
+        items.clear();
+        for(int i = 0; i < code.length; i++) {
+            if(entries[i]) {
+                flush();
+            }
+            if(!add(i, code[i])) {
+                flush();
+                keep(i);
+            }
+        }
+        flush();
+        Instruction[] newCode = rewriter.finish(labels, localLabels, functions);
+        this.code = null;
+        entries = null;
+        rewriter = null;
+        return newCode;
+    }
+
+    private void keep(int index) {
+        Instruction instr = code[index];
+        if(instr instanceof IfGoto) {
+            // the target of a kept if goto must start a new run
+            int target = ((IfGoto) instr).getJump() + 1;
+            if(target < entries.length) {
+                entries[target] = true;
+            }
+        }
+        rewriter.keep(index);
+    }
+
+    private void flush() {
+        for(Item item : items) {
+            if(item.node == null || item.node instanceof ValueNode) {
+                keep(item.start);
+                continue;
+            }
+            Expression e = new Expression(item.last.getLine(), item.last.getName(), item.node);
+            if(item.last.shouldNotReturnValue()) {
+                e.setNoReturn();
+            }
+            rewriter.replace(item.start, item.end, e);
+        }
+        items.clear();
+    }
+
+    private Node[] pop(int amount) {
+        if(items.size() < amount) {
+            return null;
+        }
+        Node[] nodes = new Node[amount];
+        for(int i = 0; i < amount; i++) {
+            nodes[i] = items.get(items.size() - amount + i).node;
+            if(nodes[i] == null) {
+                return null;
+            }
+        }
+        return nodes;
+    }
+
+    private int push(int index, int consumed, Node node, Instruction instr) {
+        int start = consumed == 0 ? index : items.get(items.size() - consumed).start;
+        for(int i = 0; i < consumed; i++) {
+            items.remove(items.size() - 1);
+        }
+        items.add(new Item(start, index, node, instr));
+        return start;
+    }
+
+    private boolean add(int index, Instruction instr) {
+        Class<?> c = instr.getClass();
+        if(c == Constant.class) {
+            push(index, 0, new ValueNode(instr.getLine(), instr.getName(),
+                    ((Constant) instr).getConstant()), instr);
+            return true;
+        } else if(c == IfGoto.class) {
+            if(items.isEmpty() || items.get(items.size() - 1).node == null) {
+                return false;
+            }
+            items.add(new Item(index, index, null, instr));
+            return true;
+        } else if(c == Array.class) {
+            Node[] children = pop(instr.getArguments());
+            if(children == null) {
+                return false;
+            }
+            Array a = (Array) instr;
+            push(index, children.length, new ArrayNode(a.getLine(), a.getName(), ids++,
+                    a.getVariable(), children), instr);
+            return true;
+        } else if(c == Function.class || c == ArithmeticFunction.class
+                || c == CompareFunction.class) {
+            return addFunction(index, (Function) instr);
+        }
+        return false;
+    }
+
+    private boolean addFunction(int index, Function f) {
+        NamedFunction function = f.getFunction();
+        if(FunctionRegistry.hasControlFlow(function)) {
+            return false;
+        }
+        int size = items.size();
+        if(size >= 3 && items.get(size - 2).node == null) {
+            // right side of && or ||, the if goto jumps over this function
+            IfGoto ifGoto = (IfGoto) items.get(size - 2).last;
+            Node left = items.get(size - 3).node;
+            Node right = items.get(size - 1).node;
+            if(ifGoto.getJump() != index || left == null || right == null) {
+                return false;
+            }
+            push(index, 3, new LogicNode(f.getLine(), f.getName(), ifGoto.getCheck(),
+                    left, right), f);
+        } else {
+            Node[] children = pop(f.getArguments());
+            if(children == null) {
+                return false;
+            }
+            Node node;
+            if(f instanceof ArithmeticFunction) {
+                node = new ArithmeticNode(f.getLine(), f.getName(), ids++,
+                        function.getName().charAt(0), children[0],
+                        children.length > 1 ? children[1] : null);
+            } else if(f instanceof CompareFunction) {
+                node = new CompareNode(f.getLine(), ids++, function, children[0], children[1]);
+            } else {
+                node = new FunctionNode(f.getLine(), ids++, function, children);
+            }
+            push(index, children.length, node, f);
+        }
+        if(f.shouldNotReturnValue()) {
+            flush();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,15 @@
+package me.hammerle.snuviscript.code;
+
+// an active call of a user function or of a gosub, frames are pooled by the script
+final class Frame {
+    // execution continues after this index on return
+    int returnIndex;
+    // the user function, null for gosub and the outermost frame
+    String function;
+    // the frame owning the if state and the local labels, gosub uses the one of its caller
+    Frame scope;
+    boolean ifState;
+    // slice of the local variables
+    int base;
+    int top;
+}
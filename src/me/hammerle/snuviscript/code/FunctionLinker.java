@@ -0,0 +1,58 @@
+package me.hammerle.snuviscript.code;
+
+import java.util.HashMap;
+import me.hammerle.snuviscript.exceptions.PreScriptException;
+import me.hammerle.snuviscript.instructions.Function;
+import me.hammerle.snuviscript.instructions.Instruction;
+import me.hammerle.snuviscript.instructions.Return;
+import me.hammerle.snuviscript.instructions.TailCall;
+import me.hammerle.snuviscript.instructions.UserCall;
+import me.hammerle.snuviscript.instructions.UserFunction;
+
+// binds calls of user functions to the index of their function and marks tail calls, indices
+// do not change so this runs after all other rewrites, the given code may be shared and is
+// copied
+final class FunctionLinker {
+    static Instruction[] link(Instruction[] code, HashMap<String, Integer> functions) {
+        code = code.clone();
+        for(int i = 0; i < code.length; i++) {
+            if(code[i].getClass() != Function.class) {
+                continue;
+            }
+            Function f = (Function) code[i];
+            NamedFunction nf = f.getFunction();
+            if(!FunctionRegistry.isUserFunction(nf)) {
+                continue;
+            }
+            Integer sub = functions.get(nf.getName());
+            if(sub == null) {
+                // reported when the call runs
+                continue;
+            }
+            UserFunction uf = (UserFunction) code[sub];
+            if(uf.getArgumentNames().length != f.getArguments()) {
+                throw new PreScriptException(String.format(
+                        "invalid number of arguments at function '%s'", nf.getName()),
+                        f.getLine());
+            }
+            UserCall call;
+            if(isTailCall(code, i)) {
+                call = new TailCall(f.getLine(), nf.getName(), f.getArguments(), sub, uf);
+            } else {
+                call = new UserCall(f.getLine(), nf.getName(), f.getArguments(), sub, uf);
+            }
+            if(f.shouldNotReturnValue()) {
+                call.setNoReturn();
+            }
+            code[i] = call;
+        }
+        return code;
+    }
+
+    // return f(...), the value of the call is returned right away
+    private static boolean isTailCall(Instruction[] code, int index) {
+        int next = index + 1;
+        return !code[index].shouldNotReturnValue() && next < code.length
+                && code[next].getClass() == Return.class && code[next].getArguments() == 1;
+    }
+}
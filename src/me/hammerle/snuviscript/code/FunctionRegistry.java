@@ -24,15 +24,22 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import me.hammerle.snuviscript.config.SnuviConfig;
-import me.hammerle.snuviscript.inputprovider.Variable;
 
 public class FunctionRegistry {
     public static final Set<PosixFilePermission> FILE_ACCESS =
             PosixFilePermissions.fromString("rwxrwxrwx");
-    private static final HashMap<String, Object> GLOBAL_VARS = new HashMap<>();
-    private static final HashMap<String, NamedFunction> FUNCTIONS = new HashMap<>();
+    private static final Map<String, Object> GLOBAL_VARS =
+            Collections.synchronizedMap(new HashMap<>());
+    private static final ConcurrentHashMap<String, NamedFunction> FUNCTIONS =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, NamedFunction> USER_FUNCTIONS =
+            new ConcurrentHashMap<>();
+    // functions which move the instruction pointer of the script
+    private static final Set<String> CONTROL_FLOW = new HashSet<>(Arrays.asList("goto",
+            "ignoregoto", "gosub", "wait", "waitfor", "term", "script.term"));
 
     public static class ArrayIterator implements Iterator<Object> {
         private final Object[] array;
@@ -58,6 +65,13 @@ public class FunctionRegistry {
         FUNCTIONS.put(name, new NamedFunction(name, f));
     }
 
+    // for functions without side effects returning the same immutable value for the same
+    // arguments, registering another function under the name drops this
+    protected static void registerPureFunction(String name,
+            ExceptionBiFunction<Script, InputProvider[], Object> f) {
+        FUNCTIONS.put(name, new NamedFunction(name, f, true));
+    }
+
     protected static void registerConsumer(String name,
             ExceptionBiConsumer<Script, InputProvider[]> f) {
         FUNCTIONS.put(name, new NamedFunction(name, (sc, in) -> {
@@ -67,19 +81,34 @@ public class FunctionRegistry {
     }
 
     protected static void registerAlias(String original, String alias) {
-        FUNCTIONS.put(alias, FUNCTIONS.get(original));
+        NamedFunction f = FUNCTIONS.get(original);
+        if(f == null) {
+            throw new IllegalArgumentException(
+                    String.format("cannot alias unknown function '%s'", original));
+        }
+        FUNCTIONS.put(alias, f);
     }
 
     public static NamedFunction getFunction(String f) {
         final String function = f.toLowerCase();
-        return FUNCTIONS.getOrDefault(function, new NamedFunction(function, (sc, in) -> {
-            sc.handleFunction(function, in);
-            return Void.TYPE;
-        }));
+        NamedFunction nf = FUNCTIONS.get(function);
+        if(nf != null) {
+            return nf;
+        }
+        // one call function per user function name, calls are bound while linking
+        return USER_FUNCTIONS.computeIfAbsent(function, name -> new NamedFunction(name,
+                (sc, in) -> {
+                    sc.handleFunction(name, in);
+                    return Void.TYPE;
+                }));
     }
 
+    // the functions registered here, hosts may replace them later
+    private static final Map<String, NamedFunction> BUILTINS;
+
     static {
         register();
+        BUILTINS = new HashMap<>(FUNCTIONS);
     }
 
     private static class ScheduledGoto implements Runnable {
@@ -116,6 +145,20 @@ public class FunctionRegistry {
         }
     }
 
+    public static boolean hasControlFlow(NamedFunction f) {
+        // unknown names are calls of user functions
+        return FUNCTIONS.get(f.getName()) != f || CONTROL_FLOW.contains(f.getName());
+    }
+
+    // false once a host registered another function under the name
+    public static boolean isBuiltin(NamedFunction f) {
+        return FUNCTIONS.get(f.getName()) == f && BUILTINS.get(f.getName()) == f;
+    }
+
+    public static boolean isUserFunction(NamedFunction f) {
+        return FUNCTIONS.get(f.getName()) != f;
+    }
+
     public static Set<String> getAllFunctionNames() {
         return new HashSet<>(FUNCTIONS.keySet());
     }
@@ -153,15 +196,11 @@ public class FunctionRegistry {
         registerFunction("script.getid", (sc, in) -> (double) ((Script) in[0].get(sc)).getId());
         registerFunction("script.getvar", (sc, in) -> {
             Script other = (Script) in[0].get(sc);
-            Variable v = other.getVar(in[1].getString(sc));
-            if(v == null) {
-                return null;
-            }
-            return v.get(other);
+            return other.getVarValue(in[1].getString(sc));
         });
         registerConsumer("script.setvar", (sc, in) -> {
             Script other = (Script) in[0].get(sc);
-            other.getVar(in[1].getString(sc)).set(other, in[2].get(sc));
+            other.setVarValue(in[1].getString(sc), in[2].get(sc));
         });
         registerFunction("script.getall", (sc, in) -> {
             String name = in[0].getString(sc);
@@ -170,56 +209,55 @@ public class FunctionRegistry {
         });
         registerConsumer("script.term", (sc, in) -> {
             Script other = (Script) in[0].get(sc);
-            other.term();
             sc.getScriptManager().removeScript(other);
         });
-        registerFunction("bit.rightshift",
+        registerPureFunction("bit.rightshift",
                 (sc, in) -> (double) (in[0].getInt(sc) >> in[1].getInt(sc)));
-        registerFunction("bit.leftshift",
+        registerPureFunction("bit.leftshift",
                 (sc, in) -> (double) (in[0].getInt(sc) << in[1].getInt(sc)));
-        registerFunction("bit.and", (sc, in) -> (double) (in[0].getInt(sc) & in[1].getInt(sc)));
-        registerFunction("bit.or", (sc, in) -> (double) (in[0].getInt(sc) | in[1].getInt(sc)));
-        registerFunction("bit.xor", (sc, in) -> (double) (in[0].getInt(sc) ^ in[1].getInt(sc)));
-        registerFunction("bit.invert", (sc, in) -> (double) (~in[0].getInt(sc)));
-        registerFunction("bit.set",
+        registerPureFunction("bit.and", (sc, in) -> (double) (in[0].getInt(sc) & in[1].getInt(sc)));
+        registerPureFunction("bit.or", (sc, in) -> (double) (in[0].getInt(sc) | in[1].getInt(sc)));
+        registerPureFunction("bit.xor", (sc, in) -> (double) (in[0].getInt(sc) ^ in[1].getInt(sc)));
+        registerPureFunction("bit.invert", (sc, in) -> (double) (~in[0].getInt(sc)));
+        registerPureFunction("bit.set",
                 (sc, in) -> (double) (in[0].getInt(sc) | (1 << (in[1].getInt(sc)))));
-        registerFunction("bit.unset",
+        registerPureFunction("bit.unset",
                 (sc, in) -> (double) (in[0].getInt(sc) & (~(1 << (in[1].getInt(sc))))));
-        registerFunction("bit.get",
+        registerPureFunction("bit.get",
                 (sc, in) -> (in[0].getInt(sc) & (1 << (in[1].getInt(sc)))) != 0);
-        registerFunction("%", (sc, in) -> (double) (in[0].getInt(sc) % in[1].getInt(sc)));
+        registerPureFunction("%", (sc, in) -> (double) (in[0].getInt(sc) % in[1].getInt(sc)));
         registerAlias("%", "math.mod");
-        registerFunction("math.abs", (sc, in) -> Math.abs(in[0].getDouble(sc)));
-        registerFunction("math.pow",
+        registerPureFunction("math.abs", (sc, in) -> Math.abs(in[0].getDouble(sc)));
+        registerPureFunction("math.pow",
                 (sc, in) -> Math.pow(in[0].getDouble(sc), in[1].getDouble(sc)));
-        registerFunction("math.root",
+        registerPureFunction("math.root",
                 (sc, in) -> Math.pow(in[0].getDouble(sc), 1.0 / in[1].getDouble(sc)));
-        registerFunction("math.sqrt", (sc, in) -> Math.sqrt(in[0].getDouble(sc)));
-        registerFunction("math.hypot",
+        registerPureFunction("math.sqrt", (sc, in) -> Math.sqrt(in[0].getDouble(sc)));
+        registerPureFunction("math.hypot",
                 (sc, in) -> Math.hypot(in[0].getDouble(sc), in[1].getDouble(sc)));
-        registerFunction("math.sin", (sc, in) -> Math.sin(in[0].getDouble(sc)));
-        registerFunction("math.cos", (sc, in) -> Math.cos(in[0].getDouble(sc)));
-        registerFunction("math.tan", (sc, in) -> Math.tan(in[0].getDouble(sc)));
-        registerFunction("math.asin", (sc, in) -> Math.asin(in[0].getDouble(sc)));
-        registerFunction("math.acos", (sc, in) -> Math.acos(in[0].getDouble(sc)));
-        registerFunction("math.atan", (sc, in) -> Math.atan(in[0].getDouble(sc)));
-        registerFunction("math.e", (sc, in) -> Math.E);
-        registerFunction("math.pi", (sc, in) -> Math.PI);
-        registerFunction("math.ln", (sc, in) -> Math.log(in[0].getDouble(sc)));
-        registerFunction("math.log", (sc, in) -> Math.log10(in[0].getDouble(sc)));
+        registerPureFunction("math.sin", (sc, in) -> Math.sin(in[0].getDouble(sc)));
+        registerPureFunction("math.cos", (sc, in) -> Math.cos(in[0].getDouble(sc)));
+        registerPureFunction("math.tan", (sc, in) -> Math.tan(in[0].getDouble(sc)));
+        registerPureFunction("math.asin", (sc, in) -> Math.asin(in[0].getDouble(sc)));
+        registerPureFunction("math.acos", (sc, in) -> Math.acos(in[0].getDouble(sc)));
+        registerPureFunction("math.atan", (sc, in) -> Math.atan(in[0].getDouble(sc)));
+        registerPureFunction("math.e", (sc, in) -> Math.E);
+        registerPureFunction("math.pi", (sc, in) -> Math.PI);
+        registerPureFunction("math.ln", (sc, in) -> Math.log(in[0].getDouble(sc)));
+        registerPureFunction("math.log", (sc, in) -> Math.log10(in[0].getDouble(sc)));
         registerFunction("math.random",
                 (sc, in) -> (double) SnuviUtils.randomInt(in[0].getInt(sc), in[1].getInt(sc)));
-        registerFunction("math.round", (sc, in) -> (double) Math.round(in[0].getDouble(sc)));
-        registerFunction("math.rounddown", (sc, in) -> Math.floor(in[0].getDouble(sc)));
-        registerFunction("math.roundup", (sc, in) -> Math.ceil(in[0].getDouble(sc)));
-        registerFunction("math.roundcomma", (sc, in) -> {
+        registerPureFunction("math.round", (sc, in) -> (double) Math.round(in[0].getDouble(sc)));
+        registerPureFunction("math.rounddown", (sc, in) -> Math.floor(in[0].getDouble(sc)));
+        registerPureFunction("math.roundup", (sc, in) -> Math.ceil(in[0].getDouble(sc)));
+        registerPureFunction("math.roundcomma", (sc, in) -> {
             double d = in[0].getDouble(sc);
             int factor = (int) Math.pow(10, in[1].getInt(sc));
             return (double) (((double) Math.round(d * factor)) / factor);
         });
-        registerFunction("math.min",
+        registerPureFunction("math.min",
                 (sc, in) -> Math.min(in[0].getDouble(sc), in[1].getDouble(sc)));
-        registerFunction("math.max",
+        registerPureFunction("math.max",
                 (sc, in) -> Math.max(in[0].getDouble(sc), in[1].getDouble(sc)));
         registerFunction("list.new", (sc, in) -> new ArrayList<>());
         registerFunction("list.exists", (sc, in) -> in[0].get(sc) instanceof List);
@@ -337,37 +375,38 @@ public class FunctionRegistry {
                         return null;
                     }
                 });
-        registerFunction("string.matches",
+        registerPureFunction("string.matches",
                 (sc, in) -> in[0].getString(sc).matches(in[1].getString(sc)));
-        registerFunction("string.number", (sc, in) -> SnuviUtils.toString(in[0].getDouble(sc)));
+        registerPureFunction("string.number", (sc, in) -> SnuviUtils.toString(in[0].getDouble(sc)));
         registerFunction("string.class", (sc, in) -> in[0].get(sc).getClass().getSimpleName());
-        registerFunction("string.tolowercase",
+        registerPureFunction("string.tolowercase",
                 (sc, in) -> SnuviUtils.connect(sc, in, 0).toLowerCase());
-        registerFunction("string.touppercase",
+        registerPureFunction("string.touppercase",
                 (sc, in) -> SnuviUtils.connect(sc, in, 0).toUpperCase());
         registerFunction("string.split",
                 (sc, in) -> in[1].getString(sc).split(in[0].getString(sc)));
-        registerFunction("string.concat", (sc, in) -> SnuviUtils.connect(sc, in, 0));
-        registerFunction("string", (sc, in) -> String.valueOf(in[0].get(sc)));
-        registerFunction("string.substring",
+        registerPureFunction("string.concat", (sc, in) -> SnuviUtils.connect(sc, in, 0));
+        registerPureFunction("string", (sc, in) -> String.valueOf(in[0].get(sc)));
+        registerPureFunction("string.substring",
                 (sc, in) -> in[0].getString(sc).substring(in[1].getInt(sc), in[2].getInt(sc)));
-        registerFunction("string.length", (sc, in) -> (double) in[0].getString(sc).length());
-        registerFunction("string.startswith",
+        registerPureFunction("string.length", (sc, in) -> (double) in[0].getString(sc).length());
+        registerPureFunction("string.startswith",
                 (sc, in) -> in[0].getString(sc).startsWith(in[1].getString(sc), in[2].getInt(sc)));
-        registerFunction("string.endswith",
+        registerPureFunction("string.endswith",
                 (sc, in) -> in[0].getString(sc).endsWith(in[1].getString(sc)));
-        registerFunction("string.contains",
+        registerPureFunction("string.contains",
                 (sc, in) -> in[0].getString(sc).contains(in[1].getString(sc)));
-        registerFunction("string.indexof", (sc,
+        registerPureFunction("string.indexof", (sc,
                 in) -> (double) in[0].getString(sc).indexOf(in[1].getString(sc), in[2].getInt(sc)));
-        registerFunction("string.lastindexof", (sc, in) -> (double) in[0].getString(sc)
+        registerPureFunction("string.lastindexof", (sc, in) -> (double) in[0].getString(sc)
                 .lastIndexOf(in[1].getString(sc), in[2].getInt(sc)));
-        registerFunction("string.replace", (sc, in) -> in[0].getString(sc)
+        registerPureFunction("string.replace", (sc, in) -> in[0].getString(sc)
                 .replaceAll(in[1].getString(sc), in[2].getString(sc)));
-        registerFunction("string.trim", (sc, in) -> in[0].getString(sc).trim());
-        registerFunction("string.charcode",
+        registerPureFunction("string.trim", (sc, in) -> in[0].getString(sc).trim());
+        registerPureFunction("string.charcode",
                 (sc, in) -> (double) in[0].getString(sc).charAt(in[1].getInt(sc)));
-        registerFunction("string.fromcode", (sc, in) -> String.valueOf((char) in[0].getInt(sc)));
+        registerPureFunction("string.fromcode",
+                (sc, in) -> String.valueOf((char) in[0].getInt(sc)));
         registerFunction("file.new", (sc, in) -> new File(in[0].getString(sc)));
         registerFunction("file.exists", (sc, in) -> ((File) in[0].get(sc)).exists());
         registerFunction("file.isfile", (sc, in) -> ((File) in[0].get(sc)).isFile());
@@ -419,14 +458,14 @@ public class FunctionRegistry {
                 return null;
             }
         });
-        registerFunction("+", (sc, in) -> in[0].getDouble(sc) + in[1].getDouble(sc));
+        registerPureFunction("+", (sc, in) -> in[0].getDouble(sc) + in[1].getDouble(sc));
         registerAlias("+", "add");
-        registerFunction("-", (sc, in) -> in.length == 1 ? -in[0].getDouble(sc)
+        registerPureFunction("-", (sc, in) -> in.length == 1 ? -in[0].getDouble(sc)
                 : in[0].getDouble(sc) - in[1].getDouble(sc));
         registerAlias("-", "sub");
-        registerFunction("*", (sc, in) -> in[0].getDouble(sc) * in[1].getDouble(sc));
+        registerPureFunction("*", (sc, in) -> in[0].getDouble(sc) * in[1].getDouble(sc));
         registerAlias("*", "mul");
-        registerFunction("/", (sc, in) -> in[0].getDouble(sc) / in[1].getDouble(sc));
+        registerPureFunction("/", (sc, in) -> in[0].getDouble(sc) / in[1].getDouble(sc));
         registerAlias("/", "div");
         registerFunction("=", (sc, in) -> {
             Object o = in[1].get(sc);
@@ -524,26 +563,26 @@ public class FunctionRegistry {
                     new ScheduledGoto("sgoto", sc, label, line), time);
         });
         registerConsumer("gosub", (sc, in) -> sc.goSub(in[0].getString(sc)));
-        registerFunction("==", (sc, in) -> Objects.equals(in[0].get(sc), in[1].get(sc)));
+        registerPureFunction("==", (sc, in) -> Objects.equals(in[0].get(sc), in[1].get(sc)));
         registerAlias("==", "equal");
         registerAlias("==", "equals");
-        registerFunction("!=", (sc, in) -> !Objects.equals(in[0].get(sc), in[1].get(sc)));
+        registerPureFunction("!=", (sc, in) -> !Objects.equals(in[0].get(sc), in[1].get(sc)));
         registerAlias("!=", "notequal");
-        registerFunction("<",
+        registerPureFunction("<",
                 (sc, in) -> ((Comparable) in[0].get(sc)).compareTo(in[1].get(sc)) < 0);
         registerAlias("<", "less");
-        registerFunction(">",
+        registerPureFunction(">",
                 (sc, in) -> ((Comparable) in[0].get(sc)).compareTo(in[1].get(sc)) > 0);
         registerAlias(">", "greater");
-        registerFunction("<=",
+        registerPureFunction("<=",
                 (sc, in) -> ((Comparable) in[0].get(sc)).compareTo(in[1].get(sc)) <= 0);
         registerAlias("<=", "lessequal");
-        registerFunction(">=",
+        registerPureFunction(">=",
                 (sc, in) -> ((Comparable) in[0].get(sc)).compareTo(in[1].get(sc)) >= 0);
         registerAlias(">=", "greaterequal");
-        registerFunction("!", (sc, in) -> !in[0].getBoolean(sc));
+        registerPureFunction("!", (sc, in) -> !in[0].getBoolean(sc));
         registerAlias("!", "invert");
-        registerFunction("&&", (sc, in) -> {
+        registerPureFunction("&&", (sc, in) -> {
             for(InputProvider i : in) {
                 if(!i.getBoolean(sc)) {
                     return false;
@@ -552,7 +591,7 @@ public class FunctionRegistry {
             return true;
         });
         registerAlias("&&", "and");
-        registerFunction("||", (sc, in) -> {
+        registerPureFunction("||", (sc, in) -> {
             for(InputProvider i : in) {
                 if(i.getBoolean(sc)) {
                     return true;
@@ -607,9 +646,9 @@ public class FunctionRegistry {
             sc.term();
             sc.getScriptManager().removeScript(sc);
         });
-        registerFunction("isbool", (sc, in) -> (in[0].get(sc) instanceof Boolean));
-        registerFunction("isdouble", (sc, in) -> (in[0].get(sc) instanceof Double));
-        registerFunction("islong", (sc, in) -> {
+        registerPureFunction("isbool", (sc, in) -> (in[0].get(sc) instanceof Boolean));
+        registerPureFunction("isdouble", (sc, in) -> (in[0].get(sc) instanceof Double));
+        registerPureFunction("islong", (sc, in) -> {
             Object o = in[0].get(sc);
             if(o instanceof Double) {
                 double d = (Double) o;
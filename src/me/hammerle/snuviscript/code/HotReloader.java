@@ -0,0 +1,173 @@
+package me.hammerle.snuviscript.code;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import me.hammerle.snuviscript.exceptions.PreScriptException;
+
+// watches the directories of all files of running scripts, once a script file or one of its
+// imports changes the program is compiled again on the watcher thread and the affected scripts
+// are handed to the handler on the scheduler, programs of unchanged files stay in the cache,
+// the import resolver relies on the reported changes instead of checking the files itself
+final class HotReloader {
+    // editors often write a file in several steps
+    private static final long SETTLE_MILLIS = 100;
+
+    private final ScriptManager sm;
+    private final BiConsumer<Script, Program> handler;
+    private final WatchService watcher;
+    private final Set<Path> directories = ConcurrentHashMap.newKeySet();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    HotReloader(ScriptManager sm, BiConsumer<Script, Program> handler) throws IOException {
+        this.sm = sm;
+        this.handler = handler;
+        watcher = FileSystems.getDefault().newWatchService();
+        thread = new Thread(this::watch, "snuvi hot reload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static Path normalize(String file) {
+        return Paths.get(file).toAbsolutePath().normalize();
+    }
+
+    void track(Program program) {
+        for(String file : program.getFiles()) {
+            watch(normalize(file).getParent());
+        }
+    }
+
+    // a missing directory is covered by its closest existing parent, which reports its creation
+    void watchNearest(Path directory) {
+        while(directory != null && !directories.contains(directory)
+                && !Files.isDirectory(directory)) {
+            directory = directory.getParent();
+        }
+        watch(directory);
+    }
+
+    private void watch(Path directory) {
+        if(directory == null || !directories.add(directory)) {
+            return;
+        }
+        try {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch(IOException | ClosedWatchServiceException ex) {
+            directories.remove(directory);
+            sm.getLogger().print(String.format("cannot watch '%s': %s", directory,
+                    ex.getMessage()));
+        }
+    }
+
+    void close() {
+        running = false;
+        try {
+            watcher.close();
+        } catch(IOException ex) {
+            sm.getLogger().print(ex);
+        }
+    }
+
+    private void watch() {
+        try {
+            while(running) {
+                Set<Path> changed = new HashSet<>();
+                boolean overflow = collect(watcher.take(), changed);
+                WatchKey key;
+                while((key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= collect(key, changed);
+                }
+                reload(changed, overflow);
+            }
+        } catch(ClosedWatchServiceException | InterruptedException ex) {
+            // closed by disableHotReload
+        }
+    }
+
+    // returns true if events were lost and every program has to be checked, which includes a
+    // watched directory being deleted
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        boolean overflow = false;
+        Path directory = (Path) key.watchable();
+        for(WatchEvent<?> event : key.pollEvents()) {
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else {
+                changed.add(directory.resolve((Path) event.context()).normalize());
+            }
+        }
+        if(!key.reset()) {
+            directories.remove(directory);
+            watchNearest(directory);
+            overflow = true;
+        }
+        return overflow;
+    }
+
+    private static boolean isAffected(Program program, Set<Path> changed) {
+        for(String file : program.getFiles()) {
+            if(changed.contains(normalize(file))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reload(Set<Path> changed, boolean overflow) {
+        // an import of any program may resolve to another file after a move
+        boolean moved = sm.getImportResolver().invalidate(changed, overflow);
+        if(moved) {
+            sm.clearPrograms();
+        }
+        // programs are shared, so each one is compiled once for all of its scripts
+        Map<Program, List<Script>> affected = new IdentityHashMap<>();
+        for(Script sc : sm.getScripts()) {
+            Program program = sc.getProgram();
+            if(moved || isAffected(program, changed)) {
+                affected.computeIfAbsent(program, p -> new ArrayList<>()).add(sc);
+            }
+        }
+        affected.forEach((program, scripts) -> {
+            String[] paths = program.getPaths().toArray(new String[0]);
+            Program newProgram;
+            try {
+                newProgram = sm.getProgram(paths);
+            } catch(PreScriptException ex) {
+                // the old scripts keep running until the error is fixed
+                sm.logCompileError(ex, paths[0]);
+                return;
+            }
+            if(newProgram == program || !overflow && !isAffected(program, changed)
+                    && newProgram.getFiles().equals(program.getFiles())) {
+                return;
+            }
+            track(newProgram);
+            sm.getScheduler().scheduleTask("hot reload", () -> {
+                for(Script sc : scripts) {
+                    if(!sc.shouldTerm() && sm.getScript(sc.getId()) == sc) {
+                        handler.accept(sc, newProgram);
+                    }
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,23 @@
+package me.hammerle.snuviscript.code;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// compiled files by path, a file used by many programs is compiled once and again only after
+// its content or one of its called functions changed
+final class ImportCache {
+    private final ConcurrentHashMap<String, CompiledImport> imports = new ConcurrentHashMap<>();
+
+    CompiledImport get(String file, String content) {
+        CompiledImport ci = imports.get(file);
+        if(ci != null && ci.isCompiledFrom(content) && ci.isCurrent()) {
+            return ci;
+        }
+        ci = CompiledImport.compile(file, content);
+        imports.put(file, ci);
+        return ci;
+    }
+
+    void clear() {
+        imports.clear();
+    }
+}
@@ -0,0 +1,64 @@
+package me.hammerle.snuviscript.code;
+
+import java.util.Arrays;
+import java.util.List;
+import me.hammerle.snuviscript.exceptions.PreScriptException;
+import me.hammerle.snuviscript.instructions.CompareBranch;
+import me.hammerle.snuviscript.instructions.Function;
+import me.hammerle.snuviscript.instructions.Instruction;
+
+// builds the image of a program from the compiled modules of its files, lines are counted
+// through all files like the tokenizer does for several streams
+final class ImportLinker {
+    private final ImportCache cache;
+    private int[] fileStarts = new int[0];
+    private int files = 0;
+
+    ImportLinker(ImportCache cache) {
+        this.cache = cache;
+    }
+
+    ProgramImage link(List<String> paths, List<String> contents) {
+        fileStarts = new int[paths.size()];
+        files = 0;
+        CompiledImport[] modules = new CompiledImport[paths.size()];
+        int line = 1;
+        for(int i = 0; i < modules.length; i++) {
+            fileStarts[files++] = line;
+            try {
+                modules[i] = cache.get(paths.get(i), contents.get(i));
+            } catch(PreScriptException ex) {
+                int errorLine = ex.getLine() < 0 ? ex.getLine() : ex.getLine() + line - 1;
+                throw new PreScriptException(ex.getMessage(), errorLine);
+            }
+            line += modules[i].getLines();
+        }
+        ProgramImage image = ProgramImage.link(modules, new SourceMap(paths, getFileStarts()));
+        checkFunctions(image);
+        return image;
+    }
+
+    // the first line of each linked file, also valid after an error
+    int[] getFileStarts() {
+        return Arrays.copyOf(fileStarts, files);
+    }
+
+    // modules cannot know the functions of other files, builtins folded or fused away were
+    // checked by the cache
+    private static void checkFunctions(ProgramImage image) {
+        for(Instruction instr : image.code) {
+            if(instr instanceof CompareBranch) {
+                instr = ((CompareBranch) instr).getCompare();
+            }
+            if(!(instr instanceof Function)) {
+                continue;
+            }
+            NamedFunction f = ((Function) instr).getFunction();
+            if(FunctionRegistry.isUserFunction(f) && !image.functions.containsKey(f.getName())) {
+                throw new PreScriptException(
+                        String.format("Function '%s' is not defined", f.getName()),
+                        instr.getLine());
+            }
+        }
+    }
+}
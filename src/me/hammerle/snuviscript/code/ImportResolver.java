@@ -0,0 +1,248 @@
+package me.hammerle.snuviscript.code;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import me.hammerle.snuviscript.exceptions.PreScriptException;
+
+// shared by all programs of a manager: imports are looked up in the search roots and every file
+// is read once, while a watcher reports changes the results are trusted until it reports a
+// change, otherwise they are checked again once per compiled program or once per batch
+final class ImportResolver {
+    private static final List<File> DEFAULT_ROOTS =
+            Collections.singletonList(new File("/home/minecraft/scripts/"));
+
+    // a file with its import lines blanked, so lines keep their numbers
+    static final class Source {
+        // the file as it was before it was read
+        final long modified;
+        final long size;
+        final String content;
+        final List<String> imports;
+        // the check in which the file was last found unchanged
+        private volatile long checked;
+
+        private Source(long modified, long size, String content, List<String> imports,
+                long checked) {
+            this.modified = modified;
+            this.size = size;
+            this.content = content;
+            this.imports = imports;
+            this.checked = checked;
+        }
+    }
+
+    private static final class Resolution {
+        private final String path;
+        private final long checked;
+
+        private Resolution(String path, long checked) {
+            this.path = path;
+            this.checked = checked;
+        }
+    }
+
+    private volatile List<File> roots = DEFAULT_ROOTS;
+    // by normalized path, so paths reported by the watcher match
+    private final ConcurrentHashMap<String, Source> sources = new ConcurrentHashMap<>();
+    // directory and import to the resolved path
+    private final ConcurrentHashMap<String, Resolution> resolved = new ConcurrentHashMap<>();
+    private final AtomicLong check = new AtomicLong();
+    // open batches, compiles in a batch share the check made when it began
+    private final AtomicInteger batches = new AtomicInteger();
+    private volatile HotReloader watcher = null;
+
+    void setRoots(List<File> roots) {
+        this.roots = Collections.unmodifiableList(new ArrayList<>(roots));
+        resolved.clear();
+    }
+
+    List<File> getRoots() {
+        return roots;
+    }
+
+    void clear() {
+        sources.clear();
+        resolved.clear();
+    }
+
+    // null goes back to checking the files for every compiled program
+    void setWatcher(HotReloader watcher) {
+        this.watcher = watcher;
+        check.incrementAndGet();
+    }
+
+    // called before a program is compiled
+    void refresh() {
+        if(watcher == null && batches.get() == 0) {
+            check.incrementAndGet();
+        }
+    }
+
+    // every file is checked once for all programs compiled until endBatch, compiles of other
+    // threads in that time may see files as they were when the batch began
+    void beginBatch() {
+        if(watcher == null) {
+            check.incrementAndGet();
+        }
+        batches.incrementAndGet();
+    }
+
+    void endBatch() {
+        batches.decrementAndGet();
+    }
+
+    // imports are searched again after every change, returns true if an import may resolve to
+    // another file now because a script file or a directory was created or deleted
+    boolean invalidate(Set<Path> changed, boolean all) {
+        boolean moved = all;
+        for(Path path : changed) {
+            boolean known = sources.remove(path.toString()) != null;
+            if(path.toString().endsWith(".snuvi") ? !known || !Files.exists(path)
+                    : Files.isDirectory(path)) {
+                moved = true;
+            }
+        }
+        if(all) {
+            sources.clear();
+        }
+        resolved.clear();
+        return moved;
+    }
+
+    private static String normalize(String path) {
+        return Paths.get(path).toAbsolutePath().normalize().toString();
+    }
+
+    // the directory is watched before the file is read, so no change can be missed
+    private void watch(File file) {
+        HotReloader w = watcher;
+        if(w != null) {
+            w.watchNearest(file.toPath().toAbsolutePath().normalize().getParent());
+        }
+    }
+
+    // imports are searched in the roots first and then next to the importing file
+    String resolve(String importPath, String currentFile) {
+        if(!importPath.endsWith(".snuvi")) {
+            importPath += ".snuvi";
+        }
+        File importFile = new File(importPath);
+        if(importFile.isAbsolute()) {
+            return importFile.getAbsolutePath();
+        }
+        String directory = new File(currentFile).getParent();
+        String key = directory + "\0" + importPath;
+        long current = check.get();
+        Resolution r = resolved.get(key);
+        if(r != null && r.checked == current) {
+            return r.path;
+        }
+        String path = new File(directory, importPath).getAbsolutePath();
+        for(File root : roots) {
+            File f = new File(root, importPath);
+            watch(f);
+            if(f.exists()) {
+                path = f.getAbsolutePath();
+                break;
+            }
+        }
+        resolved.put(key, new Resolution(path, current));
+        return path;
+    }
+
+    Source read(String path) {
+        String key = normalize(path);
+        long current = check.get();
+        Source source = sources.get(key);
+        if(source != null && source.checked == current) {
+            return source;
+        }
+        File file = new File(key);
+        watch(file);
+        try {
+            BasicFileAttributes attributes =
+                    Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            long size = attributes.size();
+            if(source != null && source.modified == modified && source.size == size) {
+                source.checked = current;
+                return source;
+            }
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            source = prepare(modified, size, new String(bytes, StandardCharsets.UTF_8), current);
+            sources.put(key, source);
+            return source;
+        } catch(IOException ex) {
+            throw new PreScriptException("Cannot read file: " + path + " - " + ex.getMessage(),
+                    -1);
+        }
+    }
+
+    private static Source prepare(long modified, long size, String text, long checked) {
+        List<String> lines = splitLines(text);
+        List<String> imports = new ArrayList<>();
+        StringBuilder content = new StringBuilder(text.length() + 1);
+        for(String line : lines) {
+            String trimmed = line.trim();
+            if(trimmed.startsWith("import ")) {
+                imports.add(extractImportPath(trimmed));
+                content.append('\n');
+            } else {
+                content.append(line).append('\n');
+            }
+        }
+        return new Source(modified, size, content.toString(),
+                Collections.unmodifiableList(imports), checked);
+    }
+
+    // \n, \r\n and \r end a line, trailing empty lines are dropped but an empty file still has
+    // one line
+    private static List<String> splitLines(String text) {
+        if(text.isEmpty()) {
+            return Arrays.asList("");
+        }
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        int length = text.length();
+        for(int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if(c == '\n' || c == '\r') {
+                lines.add(text.substring(start, i));
+                if(c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        if(start < length) {
+            lines.add(text.substring(start));
+        }
+        int end = lines.size();
+        while(end > 0 && lines.get(end - 1).isEmpty()) {
+            end--;
+        }
+        return lines.subList(0, end);
+    }
+
+    private static String extractImportPath(String importLine) {
+        int firstQuote = importLine.indexOf('"');
+        int lastQuote = importLine.lastIndexOf('"');
+        if(firstQuote != -1 && lastQuote != -1 && firstQuote < lastQuote) {
+            return importLine.substring(firstQuote + 1, lastQuote);
+        }
+        throw new PreScriptException("Invalid import syntax: " + importLine, -1);
+    }
+}
@@ -2,20 +2,21 @@ package me.hammerle.snuviscript.code;
 
 import me.hammerle.snuviscript.inputprovider.InputProvider;
 
+// every script owns its own pool, the arrays must never be shared between threads
 public class InputProviderArrayPool {
     private final static int POOL_SIZE = 10;
-    private final static InputProvider[][] IN = new InputProvider[POOL_SIZE][];
+    private final InputProvider[][] in = new InputProvider[POOL_SIZE][];
 
-    static {
-        for(int i = 0; i < IN.length; i++) {
-            IN[i] = new InputProvider[i];
+    public InputProviderArrayPool() {
+        for(int i = 0; i < in.length; i++) {
+            in[i] = new InputProvider[i];
         }
     }
 
-    public static InputProvider[] get(int length) {
+    public InputProvider[] get(int length) {
         if(length < 0 || length >= POOL_SIZE) {
             return new InputProvider[length];
         }
-        return IN[length];
+        return in[length];
     }
 }
@@ -0,0 +1,173 @@
+package me.hammerle.snuviscript.code;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+import me.hammerle.snuviscript.inputprovider.Variable;
+import me.hammerle.snuviscript.instructions.Array;
+import me.hammerle.snuviscript.instructions.ArrayLoad;
+import me.hammerle.snuviscript.instructions.CompareBranch;
+import me.hammerle.snuviscript.instructions.CompareFunction;
+import me.hammerle.snuviscript.instructions.ConditionalGoto;
+import me.hammerle.snuviscript.instructions.Constant;
+import me.hammerle.snuviscript.instructions.For;
+import me.hammerle.snuviscript.instructions.Function;
+import me.hammerle.snuviscript.instructions.Goto;
+import me.hammerle.snuviscript.instructions.If;
+import me.hammerle.snuviscript.instructions.Increment;
+import me.hammerle.snuviscript.instructions.Instruction;
+import me.hammerle.snuviscript.instructions.While;
+
+// replaces frequent instruction sequences by single instructions, a sequence is only fused if
+// no jump lands inside of it
+final class InstructionFusion {
+    private final LinkedHashMap<String, Integer> statistics = new LinkedHashMap<>();
+    private Instruction[] code;
+    private boolean[] entries;
+
+    Instruction[] fuse(Instruction[] code, HashMap<String, Integer> labels,
+            HashMap<String, HashMap<String, Integer>> localLabels,
+            HashMap<String, Integer> functions) {
+        this.code = code;
+        entries = CodeRewriter.findEntries(code, labels, localLabels, functions, true);
+        CodeRewriter rewriter = new CodeRewriter(code);
+        int i = 0;
+        while(i < code.length) {
+            int length = fuseCompareBranch(rewriter, i);
+            if(length == 0) {
+                length = fuseIncrement(rewriter, i);
+            }
+            if(length == 0) {
+                length = fuseArrayLoad(rewriter, i);
+            }
+            if(length == 0) {
+                rewriter.keep(i);
+                length = 1;
+            }
+            i += length;
+        }
+        this.code = null;
+        entries = null;
+        return rewriter.finish(labels, localLabels, functions);
+    }
+
+    // fused instructions per pattern
+    Map<String, Integer> getStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    private void count(String pattern, int length) {
+        statistics.merge(pattern, length, Integer::sum);
+    }
+
+    private boolean canFuse(int start, int length) {
+        if(start + length > code.length) {
+            return false;
+        }
+        for(int i = start + 1; i < start + length; i++) {
+            if(entries[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private InputProvider getConstant(int index) {
+        Instruction instr = code[index];
+        return instr.getClass() == Constant.class ? ((Constant) instr).getConstant() : null;
+    }
+
+    private int fuseCompareBranch(CodeRewriter rewriter, int index) {
+        if(!canFuse(index, 4)) {
+            return 0;
+        }
+        InputProvider left = getConstant(index);
+        InputProvider right = getConstant(index + 1);
+        Instruction compare = code[index + 2];
+        Instruction branch = code[index + 3];
+        int trueJump = -1;
+        if(branch.getClass() == Goto.class) {
+            // the condition of a for loop jumps to the for instruction
+            trueJump = ((Goto) branch).getJump() + 1;
+            if(trueJump >= code.length) {
+                return 0;
+            }
+            branch = code[trueJump];
+            if(branch.getClass() != For.class) {
+                return 0;
+            }
+        }
+        Class<?> c = branch.getClass();
+        if(left == null || right == null || compare.getClass() != CompareFunction.class
+                || !FunctionRegistry.isBuiltin(((Function) compare).getFunction())
+                || compare.shouldNotReturnValue()
+                || (c != If.class && c != While.class && c != For.class
+                && c != ConditionalGoto.class)) {
+            return 0;
+        }
+        CompareBranch cb =
+                new CompareBranch(left, right, (CompareFunction) compare, (Goto) branch);
+        cb.setTrueJump(trueJump);
+        rewriter.replace(index, index + 3, cb);
+        count("compare branch", 4);
+        return 4;
+    }
+
+    private int fuseIncrement(CodeRewriter rewriter, int index) {
+        if(!canFuse(index, 2)) {
+            return 0;
+        }
+        InputProvider in = getConstant(index);
+        Instruction instr = code[index + 1];
+        if(!(in instanceof Variable) || instr.getClass() != Function.class
+                || !instr.shouldNotReturnValue() || instr.getArguments() != 1) {
+            return 0;
+        }
+        NamedFunction f = ((Function) instr).getFunction();
+        // the increment replaces the builtin, not a function of a host
+        if(!FunctionRegistry.isBuiltin(f)) {
+            return 0;
+        }
+        double change;
+        switch(f.getName()) {
+            case "p++":
+            case "++":
+                change = 1.0;
+                break;
+            case "p--":
+            case "--":
+                change = -1.0;
+                break;
+            default:
+                return 0;
+        }
+        rewriter.replace(index, index + 1,
+                new Increment(instr.getLine(), (Variable) in, change, f.getName()));
+        count("increment", 2);
+        return 2;
+    }
+
+    private int fuseArrayLoad(CodeRewriter rewriter, int index) {
+        int constants = 0;
+        while(index + constants < code.length && getConstant(index + constants) != null) {
+            constants++;
+        }
+        if(constants == 0 || index + constants >= code.length
+                || code[index + constants].getClass() != Array.class
+                || code[index + constants].getArguments() != constants
+                || !canFuse(index, constants + 1)) {
+            return 0;
+        }
+        InputProvider[] indices = new InputProvider[constants];
+        for(int i = 0; i < constants; i++) {
+            indices[i] = getConstant(index + i);
+        }
+        Array a = (Array) code[index + constants];
+        rewriter.replace(index, index + constants,
+                new ArrayLoad(a.getLine(), a.getVariable(), indices));
+        count("array load", constants + 1);
+        return constants + 1;
+    }
+}
@@ -0,0 +1,45 @@
+package me.hammerle.snuviscript.code;
+
+import java.util.Arrays;
+
+public final class IntStack {
+    private int[] data = new int[16];
+    private int size = 0;
+
+    public void push(int i) {
+        if(size >= data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size++] = i;
+    }
+
+    public int pop() {
+        if(size <= 0) {
+            throw new IllegalStateException("stack is empty");
+        }
+        return data[--size];
+    }
+
+    public int peek() {
+        if(size <= 0) {
+            throw new IllegalStateException("stack is empty");
+        }
+        return data[size - 1];
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -5,17 +5,34 @@ import me.hammerle.snuviscript.inputprovider.InputProvider;
 public final class NamedFunction {
     private final String name;
     private final ExceptionBiFunction<Script, InputProvider[], Object> f;
+    // calls with constant arguments are evaluated at compile time
+    private final boolean pure;
 
     public NamedFunction(String name, ExceptionBiFunction<Script, InputProvider[], Object> f) {
+        this(name, f, false);
+    }
+
+    NamedFunction(String name, ExceptionBiFunction<Script, InputProvider[], Object> f,
+            boolean pure) {
         this.name = name;
         this.f = f;
+        this.pure = pure;
     }
 
     public String getName() {
         return name;
     }
 
+    public boolean isPure() {
+        return pure;
+    }
+
     public Object execute(Script sc, InputProvider[] input) throws Exception {
         return f.apply(sc, input);
     }
+
+    // generated code calls the function from a call site of its own
+    ExceptionBiFunction<Script, InputProvider[], Object> getFunction() {
+        return f;
+    }
 }
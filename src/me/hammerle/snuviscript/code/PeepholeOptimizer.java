@@ -0,0 +1,207 @@
+package me.hammerle.snuviscript.code;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import me.hammerle.snuviscript.instructions.ArithmeticFunction;
+import me.hammerle.snuviscript.instructions.Break;
+import me.hammerle.snuviscript.instructions.CompareFunction;
+import me.hammerle.snuviscript.instructions.ConditionalGoto;
+import me.hammerle.snuviscript.instructions.Constant;
+import me.hammerle.snuviscript.instructions.Continue;
+import me.hammerle.snuviscript.instructions.Else;
+import me.hammerle.snuviscript.instructions.ElseIf;
+import me.hammerle.snuviscript.instructions.EndIf;
+import me.hammerle.snuviscript.instructions.Function;
+import me.hammerle.snuviscript.instructions.Goto;
+import me.hammerle.snuviscript.instructions.If;
+import me.hammerle.snuviscript.instructions.IfGoto;
+import me.hammerle.snuviscript.instructions.Instruction;
+
+// turns if / else if / else chains into conditional jumps without the if state and lets jumps
+// skip over chains of gotos
+final class PeepholeOptimizer {
+    private Instruction[] code;
+    // jumps, labels and function entries continuing at an index, if gotos stay inside of
+    // their expression and are not counted
+    private int[] sources;
+    private Instruction[] replacements;
+    private boolean[] dropped;
+    private Instruction[] inserts;
+
+    Instruction[] optimize(Instruction[] code, HashMap<String, Integer> labels,
+            HashMap<String, HashMap<String, Integer>> localLabels,
+            HashMap<String, Integer> functions) {
+        this.code = code;
+        countSources(labels, localLabels, functions);
+        replacements = new Instruction[code.length];
+        dropped = new boolean[code.length];
+        inserts = new Instruction[code.length];
+        for(int i = 0; i < code.length; i++) {
+            if(code[i].getClass() == If.class) {
+                lowerChain(i);
+            }
+        }
+        CodeRewriter rewriter = new CodeRewriter(code);
+        for(int i = 0; i < code.length; i++) {
+            if(inserts[i] != null) {
+                rewriter.insert(inserts[i]);
+            }
+            if(dropped[i]) {
+                rewriter.replace(i, i, null);
+            } else if(replacements[i] != null) {
+                rewriter.replace(i, i, replacements[i]);
+            } else {
+                rewriter.keep(i);
+            }
+        }
+        Instruction[] newCode = rewriter.finish(labels, localLabels, functions);
+        threadJumps(newCode);
+        this.code = null;
+        sources = null;
+        replacements = null;
+        dropped = null;
+        inserts = null;
+        return newCode;
+    }
+
+    private void countSources(HashMap<String, Integer> labels,
+            HashMap<String, HashMap<String, Integer>> localLabels,
+            HashMap<String, Integer> functions) {
+        sources = new int[code.length + 1];
+        for(Instruction instr : code) {
+            if(instr instanceof Goto && !(instr instanceof IfGoto)) {
+                count(((Goto) instr).getJump() + 1);
+            }
+        }
+        labels.values().forEach(i -> count(i + 1));
+        localLabels.values().forEach(map -> map.values().forEach(i -> count(i + 1)));
+        functions.values().forEach(i -> {
+            count(i);
+            count(i + 1);
+        });
+    }
+
+    private void count(int index) {
+        if(index >= 0 && index < sources.length) {
+            sources[index]++;
+        }
+    }
+
+    // else if conditions are skipped after a taken branch, so they must not have side effects,
+    // array reads are not skipped because they fail on a missing array or a bad index
+    private static boolean isCondition(Instruction instr) {
+        Class<?> c = instr.getClass();
+        if(c == Constant.class || c == IfGoto.class) {
+            return true;
+        }
+        if(c == Function.class || c == ArithmeticFunction.class || c == CompareFunction.class) {
+            return ((Function) instr).getFunction().isPure();
+        }
+        return false;
+    }
+
+    private void lowerChain(int start) {
+        // controls of the chain: the if, every else if and the else
+        ArrayList<Integer> controls = new ArrayList<>();
+        // first index of the condition of each else if
+        ArrayList<Integer> conditions = new ArrayList<>();
+        controls.add(start);
+        int end;
+        int next = ((Goto) code[start]).getJump() + 1;
+        while(true) {
+            if(next >= code.length) {
+                return;
+            }
+            Instruction instr = code[next];
+            if(instr.getClass() == EndIf.class) {
+                end = next;
+                break;
+            } else if(instr.getClass() == Else.class) {
+                if(sources[next] != 1) {
+                    return;
+                }
+                controls.add(next);
+                end = ((Goto) instr).getJump() + 1;
+                if(end >= code.length || code[end].getClass() != EndIf.class) {
+                    return;
+                }
+                break;
+            }
+            if(sources[next] != 1) {
+                return;
+            }
+            int condition = next;
+            while(next < code.length && isCondition(code[next])) {
+                next++;
+                if(sources[next] != 0) {
+                    return;
+                }
+            }
+            if(next == condition || next >= code.length
+                    || code[next].getClass() != ElseIf.class) {
+                return;
+            }
+            conditions.add(condition);
+            controls.add(next);
+            next = ((Goto) code[next]).getJump() + 1;
+        }
+        int ownSources = 0;
+        for(int control : controls) {
+            if(((Goto) code[control]).getJump() + 1 == end) {
+                ownSources++;
+            }
+        }
+        if(sources[end] != ownSources) {
+            return;
+        }
+
+        for(int i = 0; i < controls.size(); i++) {
+            int control = controls.get(i);
+            Goto g = (Goto) code[control];
+            if(g.getClass() == Else.class) {
+                // only reached by the end of the previous body
+                Goto skip = new Goto(g.getLine(), 0);
+                skip.setJump(end - 1);
+                replacements[control] = skip;
+                continue;
+            }
+            int jump = g.getJump();
+            if(code[jump + 1].getClass() == Else.class) {
+                // false continues with the body of the else
+                jump++;
+            }
+            replacements[control] = new ConditionalGoto(g.getLine(), g.getName(), jump);
+        }
+        for(int condition : conditions) {
+            // the previous body must not fall into the next condition
+            Goto skip = new Goto(code[condition].getLine(), 0);
+            skip.setJump(end - 1);
+            inserts[condition] = skip;
+        }
+        dropped[end] = true;
+    }
+
+    private static boolean isPlainGoto(Instruction instr) {
+        Class<?> c = instr.getClass();
+        return c == Goto.class || c == Break.class || c == Continue.class;
+    }
+
+    private static void threadJumps(Instruction[] code) {
+        for(Instruction instr : code) {
+            if(!(instr instanceof Goto)) {
+                continue;
+            }
+            Goto g = (Goto) instr;
+            int jump = g.getJump();
+            // bounded so a loop of gotos cannot hang the compiler
+            for(int i = 0; i < code.length; i++) {
+                int next = jump + 1;
+                if(next >= code.length || !isPlainGoto(code[next])) {
+                    break;
+                }
+                jump = ((Goto) code[next]).getJump();
+            }
+            g.setJump(jump);
+        }
+    }
+}
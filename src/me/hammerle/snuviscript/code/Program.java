@@ -0,0 +1,85 @@
+package me.hammerle.snuviscript.code;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import me.hammerle.snuviscript.inputprovider.Variable;
+import me.hammerle.snuviscript.instructions.Instruction;
+
+// the compiled code of a script, it is never changed after compiling and shared by all scripts
+// started from the same files, the values of a script live in the script itself
+public final class Program {
+    final Instruction[] code;
+    final CompiledCode byteCode;
+    private final ExecutionEngine engine;
+    final Map<String, Integer> labels;
+    final Map<String, Map<String, Integer>> localLabels;
+    final Map<String, Variable> vars;
+    final Map<String, Integer> functions;
+    private final Map<String, Integer> fusionStatistics;
+    private final SourceMap sourceMap;
+    private final List<String> paths;
+    // the files of getFiles as they were before they were read for the compile
+    private final long[] modified;
+    private final long[] sizes;
+
+    Program(String[] paths, Instruction[] code, CompiledCode byteCode, ExecutionEngine engine,
+            HashMap<String, Integer> labels,
+            HashMap<String, HashMap<String, Integer>> localLabels,
+            HashMap<String, Variable> vars, HashMap<String, Integer> functions,
+            Map<String, Integer> fusionStatistics, SourceMap sourceMap,
+            List<ImportResolver.Source> sources) {
+        this.code = code;
+        this.byteCode = byteCode;
+        this.engine = engine;
+        this.labels = Collections.unmodifiableMap(labels);
+        HashMap<String, Map<String, Integer>> local = new HashMap<>();
+        localLabels.forEach((function, map) -> local.put(function,
+                Collections.unmodifiableMap(map)));
+        this.localLabels = Collections.unmodifiableMap(local);
+        this.vars = Collections.unmodifiableMap(vars);
+        this.functions = Collections.unmodifiableMap(functions);
+        this.fusionStatistics = Collections.unmodifiableMap(fusionStatistics);
+        this.sourceMap = sourceMap;
+        this.paths = Collections.unmodifiableList(Arrays.asList(paths.clone()));
+        modified = sources.stream().mapToLong(s -> s.modified).toArray();
+        sizes = sources.stream().mapToLong(s -> s.size).toArray();
+    }
+
+    public ExecutionEngine getExecutionEngine() {
+        return engine;
+    }
+
+    // amount of instructions merged into superinstructions per pattern
+    public Map<String, Integer> getFusionStatistics() {
+        return fusionStatistics;
+    }
+
+    // the script files the program was compiled from, without imports
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    // the script files followed by their imports
+    public List<String> getFiles() {
+        return sourceMap.getFiles();
+    }
+
+    public SourceMap getSourceMap() {
+        return sourceMap;
+    }
+
+    long getModified(int file) {
+        return modified[file];
+    }
+
+    long getSize(int file) {
+        return sizes[file];
+    }
+
+    public int getInstructionCount() {
+        return code.length;
+    }
+}
@@ -0,0 +1,76 @@
+package me.hammerle.snuviscript.code;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// compiled programs by the canonical paths of their script files, an entry is only used while
+// the script files and all their imports are unchanged, the garbage collector drops programs
+// under memory pressure
+final class ProgramCache {
+    private static final class Entry {
+        private final SoftReference<Program> program;
+        private final File[] files;
+        private final long[] modified;
+        private final long[] sizes;
+
+        private Entry(Program program) {
+            this.program = new SoftReference<>(program);
+            files = new File[program.getFiles().size()];
+            modified = new long[files.length];
+            sizes = new long[files.length];
+            // a file changed while it was compiled is compiled again next time
+            for(int i = 0; i < files.length; i++) {
+                files[i] = new File(program.getFiles().get(i));
+                modified[i] = program.getModified(i);
+                sizes[i] = program.getSize(i);
+            }
+        }
+
+        private boolean isValid() {
+            for(int i = 0; i < files.length; i++) {
+                if(files[i].lastModified() != modified[i] || files[i].length() != sizes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final ConcurrentHashMap<List<String>, Entry> entries = new ConcurrentHashMap<>();
+
+    private static String canonical(String path) {
+        try {
+            return new File(path).getCanonicalPath();
+        } catch(IOException ex) {
+            return new File(path).getAbsolutePath();
+        }
+    }
+
+    Program get(ScriptManager sm, String... paths) {
+        ExecutionEngine engine = sm.getExecutionEngine();
+        // programs compiled for another engine contain other instructions
+        List<String> key = new ArrayList<>(paths.length + 1);
+        key.add(engine.name());
+        Arrays.stream(paths).map(ProgramCache::canonical).forEach(key::add);
+        Entry entry = entries.get(key);
+        if(entry != null) {
+            Program program = entry.program.get();
+            if(program != null && entry.isValid()) {
+                return program;
+            }
+            entries.remove(key, entry);
+        }
+        Program program = Script.compile(sm, paths);
+        entries.put(key, new Entry(program));
+        return program;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+}
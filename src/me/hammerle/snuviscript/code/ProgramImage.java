@@ -0,0 +1,749 @@
+package me.hammerle.snuviscript.code;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import me.hammerle.snuviscript.inputprovider.ConstantBoolean;
+import me.hammerle.snuviscript.inputprovider.ConstantDouble;
+import me.hammerle.snuviscript.inputprovider.ConstantNull;
+import me.hammerle.snuviscript.inputprovider.ConstantString;
+import me.hammerle.snuviscript.inputprovider.FoldedValue;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+import me.hammerle.snuviscript.inputprovider.LocalVariable;
+import me.hammerle.snuviscript.inputprovider.Variable;
+import me.hammerle.snuviscript.instructions.ArithmeticFunction;
+import me.hammerle.snuviscript.instructions.Array;
+import me.hammerle.snuviscript.instructions.ArrayLoad;
+import me.hammerle.snuviscript.instructions.Break;
+import me.hammerle.snuviscript.instructions.CompareBranch;
+import me.hammerle.snuviscript.instructions.CompareFunction;
+import me.hammerle.snuviscript.instructions.ConditionalGoto;
+import me.hammerle.snuviscript.instructions.Constant;
+import me.hammerle.snuviscript.instructions.Continue;
+import me.hammerle.snuviscript.instructions.Else;
+import me.hammerle.snuviscript.instructions.ElseIf;
+import me.hammerle.snuviscript.instructions.EndIf;
+import me.hammerle.snuviscript.instructions.For;
+import me.hammerle.snuviscript.instructions.Function;
+import me.hammerle.snuviscript.instructions.Goto;
+import me.hammerle.snuviscript.instructions.If;
+import me.hammerle.snuviscript.instructions.IfGoto;
+import me.hammerle.snuviscript.instructions.Increment;
+import me.hammerle.snuviscript.instructions.Instruction;
+import me.hammerle.snuviscript.instructions.Return;
+import me.hammerle.snuviscript.instructions.SignInverter;
+import me.hammerle.snuviscript.instructions.UserFunction;
+import me.hammerle.snuviscript.instructions.While;
+
+// the optimized code of a script before it is prepared for an execution engine, it can be
+// written to disk and is reused as long as the hash of the sources does not change, a single
+// compiled file is kept as a module without the header and relocated when it is linked
+//
+// layout: magic, version, source hash, string pool, source map, variables, labels, local labels,
+// functions, fusion statistics, instructions with their lines
+final class ProgramImage {
+    private static final int MAGIC = 0x534E5643;
+    private static final int VERSION = 2;
+    private static final String EXTENSION = ".snuvic";
+
+    private static final int CONSTANT = 0;
+    private static final int ARRAY = 1;
+    private static final int FUNCTION = 2;
+    private static final int ARITHMETIC_FUNCTION = 3;
+    private static final int COMPARE_FUNCTION = 4;
+    private static final int GOTO = 5;
+    private static final int BREAK = 6;
+    private static final int CONTINUE = 7;
+    private static final int ELSE = 8;
+    private static final int ELSE_IF = 9;
+    private static final int FOR = 10;
+    private static final int IF = 11;
+    private static final int WHILE = 12;
+    private static final int IF_GOTO = 13;
+    private static final int CONDITIONAL_GOTO = 14;
+    private static final int END_IF = 15;
+    private static final int RETURN = 16;
+    private static final int SIGN_INVERTER = 17;
+    private static final int USER_FUNCTION = 18;
+    private static final int INCREMENT = 19;
+    private static final int ARRAY_LOAD = 20;
+    private static final int COMPARE_BRANCH = 21;
+
+    private static final int DOUBLE = 0;
+    private static final int STRING = 1;
+    private static final int TRUE = 2;
+    private static final int FALSE = 3;
+    private static final int NULL = 4;
+    private static final int VARIABLE = 5;
+    private static final int LOCAL_VARIABLE = 6;
+    private static final int FOLDED = 7;
+
+    final Instruction[] code;
+    final HashMap<String, Integer> labels;
+    final HashMap<String, HashMap<String, Integer>> localLabels;
+    final HashMap<String, Variable> vars;
+    final HashMap<String, Integer> functions;
+    final Map<String, Integer> fusionStatistics;
+    final SourceMap sourceMap;
+
+    ProgramImage(Instruction[] code, HashMap<String, Integer> labels,
+            HashMap<String, HashMap<String, Integer>> localLabels,
+            HashMap<String, Variable> vars, HashMap<String, Integer> functions,
+            Map<String, Integer> fusionStatistics, SourceMap sourceMap) {
+        this.code = code;
+        this.labels = labels;
+        this.localLabels = localLabels;
+        this.vars = vars;
+        this.functions = functions;
+        this.fusionStatistics = fusionStatistics;
+        this.sourceMap = sourceMap;
+    }
+
+    // covers everything the code depends on: the format, the registered functions, the file
+    // paths used in error messages and the sources
+    static byte[] hash(List<String> files, List<String> contents) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(String.valueOf(VERSION).getBytes(StandardCharsets.UTF_8));
+            FunctionRegistry.getAllFunctionNames().stream().sorted().forEach(name -> {
+                md.update(name.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            });
+            for(int i = 0; i < files.size(); i++) {
+                md.update(files.get(i).getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+                md.update(contents.get(i).getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            return md.digest();
+        } catch(NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // one file per set of started script paths
+    static String getFileName(String... paths) {
+        StringBuilder sb = new StringBuilder();
+        for(String path : paths) {
+            try {
+                sb.append(new File(path).getCanonicalPath());
+            } catch(IOException ex) {
+                sb.append(new File(path).getAbsolutePath());
+            }
+            sb.append('\0');
+        }
+        String name = new File(paths[0]).getName();
+        if(name.endsWith(".snuvi")) {
+            name = name.substring(0, name.length() - 6);
+        }
+        return String.format("%s-%08x%s", name, sb.toString().hashCode(), EXTENSION);
+    }
+
+    // returns null if the file is missing, broken or was written for other sources
+    static ProgramImage read(File file, byte[] hash) {
+        if(!file.isFile()) {
+            return null;
+        }
+        try(DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            byte[] fileHash = new byte[in.readUnsignedByte()];
+            in.readFully(fileHash);
+            if(!Arrays.equals(hash, fileHash)) {
+                return null;
+            }
+            Reader reader = new Reader();
+            SourceMap sourceMap = reader.read(in);
+            return reader.toImage(reader.code.toArray(new Instruction[reader.code.size()]),
+                    sourceMap);
+        } catch(IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    // the image without the header
+    byte[] toModule() {
+        try {
+            Writer writer = new Writer();
+            writer.write(this);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writer.writeTo(new DataOutputStream(bytes));
+            return bytes.toByteArray();
+        } catch(IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // appends the modules in order, jumps, labels and functions are moved behind the code of
+    // the previous modules, lines are moved to the start of their file and globals with the
+    // same name become one variable, only the tables and the array of the code belong to the
+    // program, the instructions are shared with programs importing the same files first
+    static ProgramImage link(CompiledImport[] modules, SourceMap sourceMap) {
+        int[] starts = sourceMap.getStarts();
+        Linked linked = null;
+        Instruction[][] parts = new Instruction[modules.length][];
+        for(int i = 0; i < modules.length; i++) {
+            linked = modules[i].link(linked, starts[i] - 1);
+            parts[i] = linked.code;
+        }
+        Reader reader = new Reader(linked);
+        Instruction[] code = new Instruction[reader.jumpOffset];
+        int index = 0;
+        for(Instruction[] part : parts) {
+            System.arraycopy(part, 0, code, index, part.length);
+            index += part.length;
+        }
+        return reader.toImage(code, sourceMap);
+    }
+
+    // a module relocated behind the modules before it, the tables cover all these modules,
+    // nothing in here is changed after linking
+    static final class Linked {
+        private final Instruction[] code;
+        // the code of all these modules
+        private final int size;
+        private final HashMap<String, Variable> vars;
+        private final HashMap<String, Integer> labels;
+        private final HashMap<String, HashMap<String, Integer>> localLabels;
+        private final HashMap<String, Integer> functions;
+        private final LinkedHashMap<String, Integer> fusionStatistics;
+
+        private Linked(Reader reader) {
+            code = reader.code.toArray(new Instruction[reader.code.size()]);
+            size = reader.jumpOffset + code.length;
+            vars = reader.vars;
+            labels = reader.labels;
+            localLabels = reader.localLabels;
+            functions = reader.functions;
+            fusionStatistics = reader.fusionStatistics;
+        }
+
+        static Linked link(Linked previous, byte[] module, int lineOffset) {
+            Reader reader = new Reader(previous);
+            reader.lineOffset = lineOffset;
+            try {
+                reader.read(new DataInputStream(new ModuleInput(module)));
+            } catch(IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return new Linked(reader);
+        }
+    }
+
+    // the file is replaced at once so concurrent readers never see half of it
+    void write(File file, byte[] hash) throws IOException {
+        Writer writer = new Writer();
+        writer.write(this);
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            try(DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeByte(hash.length);
+                out.write(hash);
+                writer.writeTo(out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    // ByteArrayInputStream synchronizes every read, modules are read byte by byte on linking
+    private static final class ModuleInput extends InputStream {
+        private final byte[] bytes;
+        private int position = 0;
+
+        private ModuleInput(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() {
+            return position < bytes.length ? bytes[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(position >= bytes.length) {
+                return len == 0 ? 0 : -1;
+            }
+            len = Math.min(len, bytes.length - position);
+            System.arraycopy(bytes, position, b, off, len);
+            position += len;
+            return len;
+        }
+    }
+
+    private static final class Writer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        // constant pool, every string is written once
+        private final ArrayList<String> strings = new ArrayList<>();
+        private final HashMap<String, Integer> stringIndex = new HashMap<>();
+
+        private void string(String s) throws IOException {
+            Integer index = stringIndex.get(s);
+            if(index == null) {
+                index = strings.size();
+                strings.add(s);
+                stringIndex.put(s, index);
+            }
+            out.writeInt(index);
+        }
+
+        private void writeTo(DataOutputStream target) throws IOException {
+            target.writeInt(strings.size());
+            for(String s : strings) {
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                target.writeInt(b.length);
+                target.write(b);
+            }
+            bytes.writeTo(target);
+        }
+
+        private void indices(Map<String, Integer> map) throws IOException {
+            out.writeInt(map.size());
+            for(Map.Entry<String, Integer> e : map.entrySet()) {
+                string(e.getKey());
+                out.writeInt(e.getValue());
+            }
+        }
+
+        private void write(ProgramImage image) throws IOException {
+            List<String> files = image.sourceMap.getFiles();
+            out.writeInt(files.size());
+            for(String file : files) {
+                string(file);
+            }
+            int[] starts = image.sourceMap.getStarts();
+            out.writeInt(starts.length);
+            for(int start : starts) {
+                out.writeInt(start);
+            }
+            out.writeInt(image.vars.size());
+            for(Variable v : image.vars.values()) {
+                string(v.getName());
+                out.writeInt(v.getIndex());
+            }
+            indices(image.labels);
+            out.writeInt(image.localLabels.size());
+            for(Map.Entry<String, HashMap<String, Integer>> e : image.localLabels.entrySet()) {
+                string(e.getKey());
+                indices(e.getValue());
+            }
+            indices(image.functions);
+            indices(image.fusionStatistics);
+            out.writeInt(image.code.length);
+            for(Instruction instr : image.code) {
+                instruction(instr);
+            }
+        }
+
+        private void provider(InputProvider in) throws IOException {
+            Class<?> c = in.getClass();
+            if(c == ConstantDouble.class) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) in.get(null));
+            } else if(c == ConstantString.class) {
+                out.writeByte(STRING);
+                string((String) in.get(null));
+            } else if(in == ConstantBoolean.TRUE) {
+                out.writeByte(TRUE);
+            } else if(in == ConstantBoolean.FALSE) {
+                out.writeByte(FALSE);
+            } else if(in == ConstantNull.NULL) {
+                out.writeByte(NULL);
+            } else if(c == Variable.class || c == LocalVariable.class) {
+                Variable v = (Variable) in;
+                out.writeByte(c == Variable.class ? VARIABLE : LOCAL_VARIABLE);
+                string(v.getName());
+                out.writeInt(v.getIndex());
+            } else if(c == FoldedValue.class) {
+                out.writeByte(FOLDED);
+                Object o = in.get(null);
+                if(o instanceof Double) {
+                    out.writeByte(DOUBLE);
+                    out.writeDouble((Double) o);
+                } else if(o instanceof String) {
+                    out.writeByte(STRING);
+                    string((String) o);
+                } else {
+                    out.writeByte((Boolean) o ? TRUE : FALSE);
+                }
+            } else {
+                throw new IllegalStateException("cannot write input " + c.getSimpleName());
+            }
+        }
+
+        private void jump(int tag, Instruction instr) throws IOException {
+            out.writeByte(tag);
+            out.writeInt(((Goto) instr).getJump());
+        }
+
+        private void instruction(Instruction instr) throws IOException {
+            out.writeInt(instr.getLine());
+            out.writeBoolean(instr.shouldNotReturnValue());
+            Class<?> c = instr.getClass();
+            if(c == Constant.class) {
+                out.writeByte(CONSTANT);
+                provider(((Constant) instr).getConstant());
+            } else if(c == Array.class) {
+                out.writeByte(ARRAY);
+                out.writeInt(instr.getArguments());
+                provider(((Array) instr).getVariable());
+            } else if(c == Function.class || c == ArithmeticFunction.class
+                    || c == CompareFunction.class) {
+                out.writeByte(c == Function.class ? FUNCTION
+                        : (c == ArithmeticFunction.class ? ARITHMETIC_FUNCTION
+                                : COMPARE_FUNCTION));
+                out.writeInt(instr.getArguments());
+                string(((Function) instr).getFunction().getName());
+            } else if(c == Goto.class) {
+                jump(GOTO, instr);
+                out.writeInt(instr.getArguments());
+            } else if(c == Break.class) {
+                jump(BREAK, instr);
+            } else if(c == Continue.class) {
+                jump(CONTINUE, instr);
+            } else if(c == Else.class) {
+                jump(ELSE, instr);
+            } else if(c == ElseIf.class) {
+                jump(ELSE_IF, instr);
+            } else if(c == For.class) {
+                jump(FOR, instr);
+            } else if(c == If.class) {
+                jump(IF, instr);
+            } else if(c == While.class) {
+                jump(WHILE, instr);
+            } else if(c == IfGoto.class) {
+                jump(IF_GOTO, instr);
+                out.writeBoolean(((IfGoto) instr).getCheck());
+            } else if(c == ConditionalGoto.class) {
+                jump(CONDITIONAL_GOTO, instr);
+                string(instr.getName());
+            } else if(c == EndIf.class) {
+                out.writeByte(END_IF);
+            } else if(c == Return.class) {
+                out.writeByte(RETURN);
+                out.writeInt(instr.getArguments());
+            } else if(c == SignInverter.class) {
+                out.writeByte(SIGN_INVERTER);
+            } else if(c == UserFunction.class) {
+                UserFunction uf = (UserFunction) instr;
+                jump(USER_FUNCTION, instr);
+                string(uf.getName());
+                out.writeInt(uf.getArgumentNames().length);
+                for(String name : uf.getArgumentNames()) {
+                    string(name);
+                }
+                out.writeInt(uf.getLocals());
+            } else if(c == Increment.class) {
+                Increment inc = (Increment) instr;
+                out.writeByte(INCREMENT);
+                provider(inc.getVariable());
+                out.writeDouble(inc.getChange());
+                string(inc.getName());
+            } else if(c == ArrayLoad.class) {
+                ArrayLoad load = (ArrayLoad) instr;
+                out.writeByte(ARRAY_LOAD);
+                provider(load.getVariable());
+                out.writeInt(load.getIndices().length);
+                for(InputProvider in : load.getIndices()) {
+                    provider(in);
+                }
+            } else if(c == CompareBranch.class) {
+                CompareBranch cb = (CompareBranch) instr;
+                jump(COMPARE_BRANCH, instr);
+                out.writeInt(cb.getTrueJump());
+                provider(cb.getLeft());
+                provider(cb.getRight());
+                instruction(cb.getCompare());
+                instruction(cb.getBranch());
+            } else {
+                throw new IllegalStateException("cannot write instruction " + c.getSimpleName());
+            }
+        }
+    }
+
+    // reads images into its maps, relocated modules are appended to what was read before
+    private static final class Reader {
+        private final HashMap<String, Variable> vars = new HashMap<>();
+        private final HashMap<String, Integer> labels = new HashMap<>();
+        private final HashMap<String, HashMap<String, Integer>> localLabels = new HashMap<>();
+        private final HashMap<String, Integer> functions = new HashMap<>();
+        private final LinkedHashMap<String, Integer> fusionStatistics = new LinkedHashMap<>();
+        private final ArrayList<Instruction> code = new ArrayList<>();
+        // globals of the current image by their index in it
+        private final HashMap<Integer, Variable> indexed = new HashMap<>();
+        private boolean relocate = false;
+        private int lineOffset = 0;
+        private int jumpOffset = 0;
+        private DataInputStream in;
+        private String[] strings;
+
+        private Reader() {
+        }
+
+        // continues behind the linked modules with a copy of their tables
+        private Reader(Linked previous) {
+            relocate = true;
+            if(previous != null) {
+                vars.putAll(previous.vars);
+                labels.putAll(previous.labels);
+                previous.localLabels.forEach((k, v) -> localLabels.put(k, new HashMap<>(v)));
+                functions.putAll(previous.functions);
+                fusionStatistics.putAll(previous.fusionStatistics);
+                jumpOffset = previous.size;
+            }
+        }
+
+        private String string() throws IOException {
+            return strings[in.readInt()];
+        }
+
+        private int readJump() throws IOException {
+            return in.readInt() + jumpOffset;
+        }
+
+        private void indices(Map<String, Integer> map, int offset) throws IOException {
+            int size = in.readInt();
+            for(int i = 0; i < size; i++) {
+                map.put(string(), in.readInt() + offset);
+            }
+        }
+
+        // returns the source map of the read image
+        private SourceMap read(DataInputStream in) throws IOException {
+            this.in = in;
+            strings = new String[in.readInt()];
+            for(int i = 0; i < strings.length; i++) {
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                strings[i] = new String(b, StandardCharsets.UTF_8);
+            }
+            int size = in.readInt();
+            List<String> files = new ArrayList<>(size);
+            for(int i = 0; i < size; i++) {
+                files.add(string());
+            }
+            int[] starts = new int[in.readInt()];
+            for(int i = 0; i < starts.length; i++) {
+                starts[i] = in.readInt();
+            }
+            indexed.clear();
+            size = in.readInt();
+            for(int i = 0; i < size; i++) {
+                String name = string();
+                int index = in.readInt();
+                Variable v = relocate ? vars.get(name) : null;
+                if(v == null) {
+                    v = new Variable(name, relocate ? vars.size() : index);
+                    vars.put(name, v);
+                }
+                indexed.put(index, v);
+            }
+            indices(labels, jumpOffset);
+            size = in.readInt();
+            for(int i = 0; i < size; i++) {
+                indices(localLabels.computeIfAbsent(string(), k -> new HashMap<>()), jumpOffset);
+            }
+            indices(functions, jumpOffset);
+            size = in.readInt();
+            for(int i = 0; i < size; i++) {
+                fusionStatistics.merge(string(), in.readInt(), Integer::sum);
+            }
+            size = in.readInt();
+            code.ensureCapacity(code.size() + size);
+            for(int i = 0; i < size; i++) {
+                code.add(instruction());
+            }
+            return new SourceMap(files, starts);
+        }
+
+        private ProgramImage toImage(Instruction[] code, SourceMap sourceMap) {
+            return new ProgramImage(code, labels, localLabels, vars, functions, fusionStatistics,
+                    sourceMap);
+        }
+
+        private InputProvider value(int tag) throws IOException {
+            switch(tag) {
+                case DOUBLE:
+                    return new ConstantDouble(in.readDouble());
+                case STRING:
+                    return new ConstantString(string());
+                case TRUE:
+                    return ConstantBoolean.TRUE;
+                case FALSE:
+                    return ConstantBoolean.FALSE;
+                default:
+                    throw new IOException("unknown value " + tag);
+            }
+        }
+
+        private InputProvider provider() throws IOException {
+            int tag = in.readUnsignedByte();
+            switch(tag) {
+                case NULL:
+                    return ConstantNull.NULL;
+                case VARIABLE: {
+                    // globals are shared with the variable table
+                    String name = string();
+                    int index = in.readInt();
+                    Variable v = indexed.get(index);
+                    return v != null && v.getName().equals(name) ? v : new Variable(name, index);
+                }
+                case LOCAL_VARIABLE:
+                    return new LocalVariable(string(), in.readInt());
+                case FOLDED:
+                    return new FoldedValue(value(in.readUnsignedByte()).get(null));
+                default:
+                    return value(tag);
+            }
+        }
+
+        private Variable variable() throws IOException {
+            return (Variable) provider();
+        }
+
+        private <T extends Goto> T jump(T g) throws IOException {
+            g.setJump(readJump());
+            return g;
+        }
+
+        private Instruction instruction() throws IOException {
+            int line = in.readInt() + lineOffset;
+            boolean noReturn = in.readBoolean();
+            Instruction instr = instruction(line);
+            if(noReturn) {
+                instr.setNoReturn();
+            }
+            return instr;
+        }
+
+        private Instruction instruction(int line) throws IOException {
+            int tag = in.readUnsignedByte();
+            switch(tag) {
+                case CONSTANT:
+                    return new Constant(line, provider());
+                case ARRAY: {
+                    int arguments = in.readInt();
+                    return new Array(line, arguments, variable());
+                }
+                case FUNCTION:
+                case ARITHMETIC_FUNCTION:
+                case COMPARE_FUNCTION: {
+                    int arguments = in.readInt();
+                    NamedFunction f = FunctionRegistry.getFunction(string());
+                    if(tag == FUNCTION) {
+                        return new Function(line, arguments, f);
+                    }
+                    return tag == ARITHMETIC_FUNCTION ? new ArithmeticFunction(line, arguments, f)
+                            : new CompareFunction(line, arguments, f);
+                }
+                case GOTO: {
+                    int jump = readJump();
+                    Goto g = new Goto(line, in.readInt());
+                    g.setJump(jump);
+                    return g;
+                }
+                case BREAK:
+                    return jump(new Break(line));
+                case CONTINUE:
+                    return jump(new Continue(line));
+                case ELSE:
+                    return jump(new Else(line));
+                case ELSE_IF:
+                    return jump(new ElseIf(line));
+                case FOR:
+                    return jump(new For(line));
+                case IF:
+                    return jump(new If(line));
+                case WHILE:
+                    return jump(new While(line));
+                case IF_GOTO: {
+                    int jump = readJump();
+                    IfGoto g = new IfGoto(line, in.readBoolean());
+                    g.setJump(jump);
+                    return g;
+                }
+                case CONDITIONAL_GOTO: {
+                    int jump = readJump();
+                    return new ConditionalGoto(line, string(), jump);
+                }
+                case END_IF:
+                    return new EndIf(line);
+                case RETURN:
+                    return new Return(line, in.readInt());
+                case SIGN_INVERTER:
+                    return new SignInverter(line);
+                case USER_FUNCTION: {
+                    int jump = readJump();
+                    String name = string();
+                    String[] args = new String[in.readInt()];
+                    for(int i = 0; i < args.length; i++) {
+                        args[i] = string();
+                    }
+                    UserFunction uf = new UserFunction(line, name, args);
+                    uf.setJump(jump);
+                    uf.setLocals(in.readInt());
+                    return uf;
+                }
+                case INCREMENT: {
+                    Variable v = variable();
+                    double change = in.readDouble();
+                    return new Increment(line, v, change, string());
+                }
+                case ARRAY_LOAD: {
+                    Variable v = variable();
+                    InputProvider[] indices = new InputProvider[in.readInt()];
+                    for(int i = 0; i < indices.length; i++) {
+                        indices[i] = provider();
+                    }
+                    return new ArrayLoad(line, v, indices);
+                }
+                case COMPARE_BRANCH: {
+                    int jump = readJump();
+                    int trueJump = in.readInt();
+                    if(trueJump != -1) {
+                        trueJump += jumpOffset;
+                    }
+                    InputProvider left = provider();
+                    InputProvider right = provider();
+                    CompareFunction compare = (CompareFunction) instruction();
+                    Goto branch = (Goto) instruction();
+                    CompareBranch cb = new CompareBranch(left, right, compare, branch);
+                    cb.setTrueJump(trueJump);
+                    cb.setJump(jump);
+                    return cb;
+                }
+                default:
+                    throw new IOException("unknown instruction " + tag);
+            }
+        }
+    }
+}
@@ -1,105 +1,205 @@
 package me.hammerle.snuviscript.code;
 
 import me.hammerle.snuviscript.inputprovider.InputProvider;
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Stack;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import me.hammerle.snuviscript.exceptions.PreScriptException;
 import me.hammerle.snuviscript.exceptions.StackTrace;
-import me.hammerle.snuviscript.inputprovider.ReturnWrapper;
-import me.hammerle.snuviscript.tokenizer.Tokenizer;
+import me.hammerle.snuviscript.tree.NodeException;
+import me.hammerle.snuviscript.tree.NodeStorage;
 import me.hammerle.snuviscript.inputprovider.Variable;
 import me.hammerle.snuviscript.instructions.Instruction;
 import me.hammerle.snuviscript.instructions.UserFunction;
 
 public final class Script {
-    private static int idCounter = 0;
+    private static final AtomicInteger ID_COUNTER = new AtomicInteger();
 
     private final int id;
     private final String name;
     private final ScriptManager scriptManager;
 
     private int lineIndex = 0;
+    private final Program program;
+    // copied from the program for the interpreter loop and the generated classes
     private final Instruction[] code;
-    private final Stack<InputProvider> dataStack = new Stack<>();
-    private final Stack<Integer> returnStack = new Stack<>();
-
-    private final HashMap<String, Integer> labels = new HashMap<>();
-    private final HashMap<String, HashMap<String, Integer>> localLabels = new HashMap<>();
-    private final HashMap<String, Variable> vars = new HashMap<>();
-    private final Stack<HashMap<String, Variable>> localVars = new Stack<>();
-    private final HashMap<String, Integer> functions = new HashMap<>();
-
-    private Stack<Boolean> ifState = new Stack<>();
-    private Stack<String> inFunction = new Stack<>();
-    private Stack<Boolean> returnVarPop = new Stack<>();
+    private final CompiledCode byteCode;
+    private final DataStack dataStack = new DataStack();
+    private final InputProviderArrayPool argumentPool = new InputProviderArrayPool();
+    private NodeStorage nodeStorage = null;
+
+    // global values indexed by Variable.getIndex, names are resolved at compile time
+    private final Object[] globals;
+    private final int eventVar;
+    // local variables of all active function calls, each call owns a slice
+    private Object[] locals = new Object[32];
+    private Object[] tailArguments = new Object[8];
+
+    // frames[0] is the frame outside of all calls, deeper frames are reused
+    private Frame[] frames = new Frame[16];
+    private int depth = 0;
+    private Frame current;
+    private int maxCallDepth;
 
     // waiting scripts stop executing and run again on an event
-    private boolean isWaiting;
+    private volatile boolean isWaiting;
     // holded scripts do not receive events
-    private boolean isHolded;
+    private volatile boolean isHolded;
     private boolean stackTrace;
 
-    private HashSet<String> loadedEvents = new HashSet<>();
+    // read by the manager while the script changes it
+    private final Set<String> loadedEvents = ConcurrentHashMap.newKeySet();
 
     private final Consumer<Script> onTerm;
 
     private final ArrayList<AutoCloseable> closeables = new ArrayList<>();
 
+    // guards the accesses of other threads, it is never held while waiting for a slice
+    private final Object accessLock = new Object();
+    private Thread runner = null;
+    private LinkedHashMap<Variable, Object> pendingVars = null;
+    private boolean termRequested = false;
+
+    // the clock is only read every CLOCK_INTERVAL instructions at jumps
+    private static final int CLOCK_INTERVAL = 1024;
+    private long timeSlice;
+    // 0 disables the limit
+    private long instructionBudget;
     private long endTime = 0;
+    private long executed = 0;
+    private long nextCheck = 0;
+    // fair share scheduling, see ScriptManager.throttle
+    private int priority = ScriptManager.DEFAULT_PRIORITY;
+    private long quota = 0;
+    private long cpuTime = 0;
+    private double virtualRuntime = 0;
+    // the activation of the scheduler is only logged once per script
+    private boolean throttled = false;
 
     public Script(ScriptManager sm, Consumer<Script> onTerm, String name, String... path) {
-        ifState.push(true);
-        this.id = idCounter++;
+        this(sm, onTerm, name, compile(sm, path));
+    }
+
+    Script(ScriptManager sm, Consumer<Script> onTerm, String name, Program program) {
+        current = new Frame();
+        current.scope = current;
+        current.ifState = true;
+        frames[0] = current;
+        this.id = ID_COUNTER.getAndIncrement();
         this.name = name;
         this.scriptManager = sm;
         this.onTerm = onTerm;
-
+        this.timeSlice = sm == null ? ScriptManager.DEFAULT_TIME_SLICE : sm.getTimeSlice();
+        this.instructionBudget = sm == null ? 0 : sm.getInstructionBudget();
+        this.maxCallDepth = sm == null ? ScriptManager.DEFAULT_MAX_CALL_DEPTH
+                : sm.getMaxCallDepth();
+
+        this.program = program;
+        this.code = program.code;
+        this.byteCode = program.byteCode;
+        this.globals = new Object[program.vars.size()];
+        this.eventVar = resolveVar("event");
+    }
+
+    static Program compile(ScriptManager sm, String... path) {
+        ExecutionEngine engine = sm == null ? ExecutionEngine.STACK : sm.getExecutionEngine();
+        File directory = sm == null ? null : sm.getPrecompiledDirectory();
+        List<String> allFilePaths = new ArrayList<>();
+        List<ImportResolver.Source> allSources = new ArrayList<>();
+        ImportResolver resolver = sm == null ? new ImportResolver() : sm.getImportResolver();
+        resolver.refresh();
+        // imports are compiled once per manager and shared by its programs
+        ImportLinker linker =
+                new ImportLinker(sm == null ? new ImportCache() : sm.getImportCache());
+        ProgramImage image = null;
         try {
-            List<InputStream> allStreams = new ArrayList<>();
-            List<String> allFilePaths = new ArrayList<>();
+            List<String> allContents = new ArrayList<>();
 
             // Process each provided script file
             for(String scriptPath : path) {
                 // Process imports for this script
-                SimpleImportProcessor importProcessor = new SimpleImportProcessor(scriptPath);
-                List<String> fileContents = importProcessor.processImportsToFileList(scriptPath);
-                List<String> fileOrder = importProcessor.getFileOrder();
-
-                // Convert to InputStreams
-                for(String content : fileContents) {
-                    allStreams.add(
-                            new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
-                }
+                SimpleImportProcessor importProcessor = new SimpleImportProcessor(resolver);
+                allContents.addAll(importProcessor.processImportsToFileList(scriptPath));
 
                 // Track file paths for error reporting
-                allFilePaths.addAll(fileOrder);
+                allFilePaths.addAll(importProcessor.getFileOrder());
+                allSources.addAll(importProcessor.getSources());
             }
 
-            // Register file mappings (file counter starts at 1 in tokenizer)
-            FileRegistry.registerFiles(1, allFilePaths);
-
-            // Convert to array for tokenizer
-            InputStream[] streams = allStreams.toArray(new InputStream[0]);
-
-            Tokenizer t = new Tokenizer();
-            Compiler c = new Compiler();
-            c.setValidationEnabled(true);
-            this.code = c.compile(t.tokenize(streams), labels, vars, functions, localLabels);
+            File precompiled = null;
+            byte[] hash = null;
+            if(directory != null) {
+                precompiled = new File(directory, ProgramImage.getFileName(path));
+                hash = ProgramImage.hash(allFilePaths, allContents);
+                image = ProgramImage.read(precompiled, hash);
+            }
+            if(image == null) {
+                image = linker.link(allFilePaths, allContents);
+                if(precompiled != null) {
+                    try {
+                        image.write(precompiled, hash);
+                    } catch(IOException | RuntimeException ex) {
+                        // the script still runs, it is just compiled again next time
+                        sm.getLogger().print(String.format("cannot write '%s': %s",
+                                precompiled, ex.getMessage()));
+                    }
+                }
+            }
 
+            Instruction[] compiled = image.code;
+            if(engine != ExecutionEngine.STACK) {
+                compiled = new ExpressionTreeBuilder().build(compiled, image.labels,
+                        image.localLabels, image.functions);
+            }
+            compiled = FunctionLinker.link(compiled, image.functions);
+            // the generated classes are nestmates of Script
+            CompiledCode byteCode = engine == ExecutionEngine.COMPILED
+                    ? ByteCodeCompiler.compile(compiled, MethodHandles.lookup()) : null;
+            return new Program(path, compiled, byteCode, engine, image.labels,
+                    image.localLabels, image.vars, image.functions, image.fusionStatistics,
+                    image.sourceMap, allSources);
         } catch(PreScriptException ex) {
-            throw ex;
+            // a precompiled image was never linked, its files are in the image
+            throw new PreScriptException(ex.getMessage(), ex.getLine(), image != null
+                    ? image.sourceMap : new SourceMap(allFilePaths, linker.getFileStarts()));
         } catch(Exception ex) {
             throw new PreScriptException(ex.getMessage(), -1);
         }
     }
 
+    public Program getProgram() {
+        return program;
+    }
+
+    // amount of instructions merged into superinstructions per pattern
+    public Map<String, Integer> getFusionStatistics() {
+        return program.getFusionStatistics();
+    }
+
+    public NodeStorage getNodeStorage() {
+        if(nodeStorage == null) {
+            nodeStorage = new NodeStorage();
+        }
+        return nodeStorage;
+    }
+
+    private InputProvider[] popArguments(int amount) {
+        InputProvider[] args = argumentPool.get(amount);
+        for(int i = args.length - 1; i >= 0; i--) {
+            args[i] = dataStack.pop();
+        }
+        return args;
+    }
+
     private void pushIfNotNull(InputProvider in) {
         if(in != null) {
             dataStack.push(in);
@@ -111,7 +211,90 @@ public final class Script {
             ex.printStackTrace();
         }
         scriptManager.getLogger().print(null, ex, instructionName, name, this,
-                new StackTrace(line, returnStack, code));
+                createStackTrace(line));
+    }
+
+    private boolean isOverBudget() {
+        if(executed < nextCheck) {
+            return false;
+        }
+        if(instructionBudget > 0 && executed >= instructionBudget) {
+            return true;
+        }
+        if(System.nanoTime() > endTime) {
+            return true;
+        }
+        nextCheck = executed + CLOCK_INTERVAL;
+        if(instructionBudget > 0) {
+            nextCheck = Math.min(nextCheck, instructionBudget);
+        }
+        return false;
+    }
+
+    // nanoseconds a script may run before it is held and continued later
+    public void setTimeSlice(long nanos) {
+        timeSlice = nanos;
+    }
+
+    public long getTimeSlice() {
+        return timeSlice;
+    }
+
+    // instructions a script may execute before it is held and continued later, 0 disables the
+    // limit, unlike the time slice this is deterministic, both are only checked at jumps and calls
+    // because code without them always ends
+    public void setInstructionBudget(long instructions) {
+        instructionBudget = instructions;
+    }
+
+    public long getInstructionBudget() {
+        return instructionBudget;
+    }
+
+    // calls of user functions and gosub which may be active at once
+    public void setMaxCallDepth(int depth) {
+        if(depth <= 0) {
+            throw new IllegalArgumentException("max call depth must be positive");
+        }
+        maxCallDepth = depth;
+    }
+
+    public int getMaxCallDepth() {
+        return maxCallDepth;
+    }
+
+    // weight of the script when the cpu time of a tick is shared between throttled scripts
+    public void setPriority(int priority) {
+        if(priority <= 0) {
+            throw new IllegalArgumentException("priority must be positive");
+        }
+        this.priority = priority;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    // nanoseconds a throttled script may run per tick, 0 disables the limit
+    public void setQuota(long nanos) {
+        quota = nanos;
+    }
+
+    public long getQuota() {
+        return quota;
+    }
+
+    // nanoseconds this script has been running in total
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    double getVirtualRuntime() {
+        return virtualRuntime;
+    }
+
+    void setVirtualRuntime(double virtualRuntime) {
+        this.virtualRuntime = virtualRuntime;
     }
 
     public int getLine() {
@@ -121,62 +304,115 @@ public final class Script {
         return code[lineIndex].getLine();
     }
 
+    // a script is only ever executed by one thread at a time because a slice holds the lock of
+    // the script, other scripts never take that lock, see getVarValue, setVarValue and term
     public void run() {
-        isWaiting = false;
+        runSlice(timeSlice);
+    }
+
+    synchronized void runSlice(long slice) {
+        Thread previous;
+        synchronized(accessLock) {
+            previous = runner;
+            runner = Thread.currentThread();
+        }
+        try {
+            executeSlice(slice);
+        } finally {
+            finishSlice(previous);
+        }
+    }
+
+    // applies the accesses of other threads which came during the slice
+    private void finishSlice(Thread previous) {
+        synchronized(accessLock) {
+            runner = previous;
+            if(previous != null) {
+                return;
+            }
+            if(pendingVars != null) {
+                pendingVars.forEach((v, value) -> v.set(this, value));
+                pendingVars = null;
+            }
+            if(termRequested) {
+                termRequested = false;
+                lineIndex = code.length;
+                stopWaiting();
+            }
+        }
+    }
+
+    private void executeSlice(long slice) {
+        stopWaiting();
         // System.out.println("_________________________");
-        endTime = System.nanoTime() + 15_000_000;
+        long start = System.nanoTime();
+        endTime = start + slice;
+        executed = 0;
+        nextCheck = instructionBudget > 0 ? Math.min(CLOCK_INTERVAL, instructionBudget)
+                : CLOCK_INTERVAL;
         while(lineIndex < code.length && !isWaiting && !isHolded) {
+            int index = lineIndex;
             Instruction instr = code[lineIndex];
             try {
-                // System.out.println("EXECUTE: " + instr + " " + dataStack);
-                if(instr.getArguments() > 0) {
-                    InputProvider[] args = InputProviderArrayPool.get(instr.getArguments());
-                    for(int i = args.length - 1; i >= 0; i--) {
-                        args[i] = dataStack.pop();
-                    }
-                    pushIfNotNull(instr.execute(this, args));
+                if(byteCode != null) {
+                    // returns at jumps out of a chunk or when the script has to stop
+                    byteCode.run(this, lineIndex / ByteCodeCompiler.CHUNK_SIZE);
+                    instr = code[Math.max(Math.min(lineIndex, code.length) - 1, 0)];
                 } else {
-                    pushIfNotNull(instr.execute(this, new InputProvider[0]));
+                    // System.out.println("EXECUTE: " + instr + " " + dataStack);
+                    pushIfNotNull(instr.execute(this, popArguments(instr.getArguments())));
+                    // System.out.println("AFTER EXECUTE: " + dataStack);
+                    lineIndex++;
+                    executed++;
                 }
-                // System.out.println("AFTER EXECUTE: " + dataStack);
-                lineIndex++;
             } catch(Exception ex) {
-                logException(ex, instr.getName(), instr.getLine());
-                Integer errorCallback = labels.get("on_error");
+                if(byteCode == null) {
+                    // like compiled code, the failing instruction counts for the budget
+                    executed++;
+                } else if(lineIndex >= 0 && lineIndex < code.length) {
+                    // compiled code keeps lineIndex on the failing instruction
+                    instr = code[lineIndex];
+                }
+                String function = instr.getName();
+                int line = instr.getLine();
+                if(ex instanceof NodeException) {
+                    NodeException nodeEx = (NodeException) ex;
+                    function = nodeEx.getName();
+                    line = nodeEx.getLine();
+                    ex = nodeEx.getCause();
+                }
+                logException(ex, function, line);
+                Integer errorCallback = program.labels.get("on_error");
                 if(errorCallback != null) {
-                    setVar("error_stacktrace",
-                            new StackTrace(instr.getLine(), returnStack, code).toString());
-                    setVar("error_function", instr.getName());
+                    setVar("error_stacktrace", createStackTrace(line).toString());
+                    setVar("error_function", function);
                     setVar("error_name", ex.getClass().getSimpleName());
                     setVar("error_message", ex.getMessage());
                     lineIndex = errorCallback + 1;
                     dataStack.clear();
-                    returnStack.clear();
-                    ifState.clear();
-                    ifState.push(true);
-                    localVars.clear();
-                    inFunction.clear();
-                    returnVarPop.clear();
+                    clearFrames();
                 } else {
                     term();
                     break;
                 }
             }
 
-            if(System.nanoTime() > endTime) {
+            // straight code always ends, so the budget is only checked at jumps and calls
+            boolean jumped = byteCode != null || lineIndex != index + 1;
+            if(jumped && isOverBudget()) {
                 isHolded = true;
-                scriptManager.getScheduler().scheduleTask("auto", () -> {
-                    if(!shouldTerm()) {
-                        isHolded = false;
-                        run();
-                    }
-                }, 5);
-                scriptManager.getLogger().print("auto scheduler was activated", null,
-                        instr.getName(), name, this,
-                        new StackTrace(instr.getLine(), returnStack, code));
+                if(!throttled) {
+                    throttled = true;
+                    scriptManager.getLogger().print("auto scheduler was activated", null,
+                            instr.getName(), name, this, createStackTrace(instr.getLine()));
+                }
+                scriptManager.throttle(this);
                 break;
             }
         }
+        long used = System.nanoTime() - start;
+        cpuTime += used;
+        virtualRuntime += used * (double) ScriptManager.DEFAULT_PRIORITY / priority;
         // System.out.println(count + " " + (15_000_000 / count));
         if(shouldTerm() && !dataStack.isEmpty()) {
             scriptManager.getLogger().print(String.format("data stack is not empty %s", dataStack));
@@ -193,7 +429,7 @@ public final class Script {
 
     public StackTrace getStackTrace() {
         if(lineIndex >= 0 && lineIndex < code.length) {
-            return new StackTrace(code[lineIndex].getLine(), returnStack, code);
+            return createStackTrace(code[lineIndex].getLine());
         }
         return null;
     }
@@ -202,8 +438,9 @@ public final class Script {
         return scriptManager;
     }
 
-    private HashMap<String, Integer> getLabels() {
-        return inFunction.isEmpty() ? labels : localLabels.get(inFunction.peek());
+    private Map<String, Integer> getLabels() {
+        String function = current.scope.function;
+        return function == null ? program.labels : program.localLabels.get(function);
     }
 
     public void gotoLabel(String label, boolean error, int add) {
@@ -216,9 +453,14 @@ public final class Script {
 
     public void goSub(String label) {
         int line = getLabels().get(label);
-        returnStack.push(lineIndex);
+        Frame caller = current;
+        Frame f = pushFrame();
+        f.returnIndex = lineIndex;
+        f.function = null;
+        f.scope = caller.scope;
+        f.base = caller.base;
+        f.top = caller.top;
         lineIndex = line;
-        returnVarPop.push(false);
     }
 
     public void jumpTo(int jump) {
@@ -226,79 +468,193 @@ public final class Script {
     }
 
     public void setIfState(boolean state) {
-        ifState.pop();
-        ifState.push(state);
+        current.scope.ifState = state;
     }
 
     public boolean getIfState() {
-        return ifState.peek();
+        return current.scope.ifState;
     }
 
     public void handleFunction(String function, InputProvider[] in) throws Exception {
-        Integer sub = functions.get(function);
+        Integer sub = program.functions.get(function);
         if(sub == null) {
             throw new IllegalArgumentException(
                     String.format("function '%s' does not exist", function));
         }
         UserFunction uf = (UserFunction) code[sub];
-        String[] args = uf.getArgumentNames();
-
-        HashMap<String, Variable> lvars = new HashMap<>();
-        if(in.length != args.length) {
+        if(in.length != uf.getArgumentNames().length) {
             throw new IllegalArgumentException(
                     String.format("invalid number of arguments at function '%s'", function));
         }
+        callFunction(sub, uf, function, in);
+    }
 
+    // the arity is checked while linking
+    public void callFunction(int sub, UserFunction uf, String function, InputProvider[] in) {
+        int base = current.top;
+        int top = base + uf.getLocals();
+        growLocals(top);
+        // arguments are read from the caller's frame before switching
         for(int i = 0; i < in.length; i++) {
-            Variable v = new Variable(args[i]);
-            v.set(this, in[i].get(this));
-            lvars.put(args[i], v);
+            locals[base + i] = in[i].get(this);
         }
+        Frame f = pushFrame();
+        f.returnIndex = lineIndex;
+        f.function = function;
+        f.scope = f;
+        f.ifState = true;
+        f.base = base;
+        f.top = top;
+        lineIndex = sub;
+    }
 
-        ifState.push(true);
-        localVars.push(lvars);
-        returnStack.push(lineIndex);
+    // return f(...) inside of a function replaces the current frame, the callee returns to
+    // the caller of the current function
+    public void tailCall(int sub, UserFunction uf, String function, InputProvider[] in) {
+        Frame f = current;
+        if(f.function == null) {
+            callFunction(sub, uf, function, in);
+            return;
+        }
+        if(in.length > tailArguments.length) {
+            tailArguments = new Object[in.length];
+        }
+        // the arguments may read the locals which are overwritten
+        for(int i = 0; i < in.length; i++) {
+            tailArguments[i] = in[i].get(this);
+        }
+        Arrays.fill(locals, f.base, f.top, null);
+        int top = f.base + uf.getLocals();
+        growLocals(top);
+        System.arraycopy(tailArguments, 0, locals, f.base, in.length);
+        Arrays.fill(tailArguments, 0, in.length, null);
+        f.function = function;
+        f.ifState = true;
+        f.top = top;
         lineIndex = sub;
-        inFunction.push(function);
-        returnVarPop.push(true);
-    }
-
-    public void handleReturn(ReturnWrapper wrapper) {
-        lineIndex = returnStack.pop();
-        if(returnVarPop.pop()) {
-            ifState.pop();
-            inFunction.pop();
-            localVars.pop();
-            if(wrapper != null && !code[lineIndex].shouldNotReturnValue()) {
-                dataStack.add(wrapper);
-            }
+    }
+
+    public void handleReturn() {
+        popFrame();
+    }
+
+    // the value is pushed in a reused slot of the data stack if the caller uses it
+    public void handleReturn(Object value) {
+        if(popFrame() && !code[lineIndex].shouldNotReturnValue()) {
+            dataStack.pushValue(value);
+        }
+    }
+
+    // returns true if a function returned
+    private boolean popFrame() {
+        if(depth == 0) {
+            throw new IllegalStateException("stack is empty");
+        }
+        Frame f = current;
+        lineIndex = f.returnIndex;
+        current = frames[--depth];
+        if(f.function != null) {
+            Arrays.fill(locals, f.base, f.top, null);
+            return true;
+        }
+        return false;
+    }
+
+    private Frame pushFrame() {
+        if(depth >= maxCallDepth) {
+            throw new IllegalStateException(
+                    String.format("maximum call depth of %d exceeded", maxCallDepth));
+        }
+        depth++;
+        if(depth >= frames.length) {
+            frames = Arrays.copyOf(frames, frames.length * 2);
+        }
+        Frame f = frames[depth];
+        if(f == null) {
+            f = new Frame();
+            frames[depth] = f;
+        }
+        current = f;
+        return f;
+    }
+
+    private void growLocals(int top) {
+        if(top > locals.length) {
+            locals = Arrays.copyOf(locals, Math.max(top, locals.length * 2));
         }
     }
 
-    public Variable getOrAddLocalVariable(String name) {
-        HashMap<String, Variable> map = localVars.peek();
-        Variable v = map.get(name);
-        if(v != null) {
-            return v;
+    public Object getLocal(int index) {
+        Frame f = current;
+        int i = f.base + index;
+        if(i >= f.top) {
+            throw new IllegalStateException("local variable outside of function");
         }
-        v = new Variable(name);
-        map.put(name, v);
-        return v;
+        return locals[i];
+    }
+
+    public void setLocal(int index, Object o) {
+        Frame f = current;
+        int i = f.base + index;
+        if(i >= f.top) {
+            throw new IllegalStateException("local variable outside of function");
+        }
+        locals[i] = o;
+    }
+
+    private void clearFrames() {
+        // arguments of a failed call may lie above the top frame
+        Arrays.fill(locals, null);
+        depth = 0;
+        current = frames[0];
+        current.ifState = true;
+    }
+
+    private StackTrace createStackTrace(int line) {
+        IntStack stack = new IntStack();
+        for(int i = 1; i <= depth; i++) {
+            stack.push(frames[i].returnIndex);
+        }
+        return new StackTrace(line, stack, code, program.getSourceMap());
     }
 
     public InputProvider peekDataStack() {
         return dataStack.peek();
     }
 
-    public void term() {
-        lineIndex = code.length;
-        isWaiting = false;
+    public void pushDouble(double d) {
+        dataStack.pushDouble(d);
+    }
+
+    public void pushValue(Object o) {
+        dataStack.pushValue(o);
+    }
+
+    public void pushArrayElement(Object array, int index) {
+        dataStack.pushArrayElement(array, index);
+    }
+
+    // returns false if another thread runs a slice of the script, the script ends after it
+    public boolean term() {
+        synchronized(accessLock) {
+            if(runner != null && runner != Thread.currentThread()) {
+                termRequested = true;
+                return false;
+            }
+            lineIndex = code.length;
+            stopWaiting();
+            return true;
+        }
     }
 
     public boolean shouldTerm() {
         return (lineIndex < 0 || lineIndex >= code.length) && !isWaiting;
     }
 
+    Consumer<Script> getOnTerm() {
+        return onTerm;
+    }
+
     public void onTerm() {
         if(onTerm != null) {
             onTerm.accept(this);
@@ -323,23 +679,79 @@ public final class Script {
         return isHolded;
     }
 
+    // events are only dispatched to waiting scripts
     public void setWaiting() {
         isWaiting = true;
     }
 
+    private void stopWaiting() {
+        isWaiting = false;
+    }
+
     public boolean isWaiting() {
         return isWaiting;
     }
 
-    public void setVar(String name, Object value) {
-        Variable v = vars.get(name);
-        if(v != null) {
-            v.set(this, value);
+    public Object getGlobal(int index) {
+        return globals[index];
+    }
+
+    public void setGlobal(int index, Object o) {
+        globals[index] = o;
+    }
+
+    // returns -1 if the script does not use the variable, hosts can cache the handle
+    public int resolveVar(String name) {
+        Variable v = program.vars.get(name);
+        return v == null ? -1 : v.getIndex();
+    }
+
+    public void setVar(int handle, Object value) {
+        if(handle >= 0) {
+            globals[handle] = value;
         }
     }
 
+    public void setVar(String name, Object value) {
+        setVar(resolveVar(name), value);
+    }
+
     public Variable getVar(String name) {
-        return vars.get(name);
+        return program.vars.get(name);
+    }
+
+    // used by other scripts, never waits for a running slice, a value read during a slice can
+    // be older than the slice
+    Object getVarValue(String name) {
+        Variable v = getVar(name);
+        if(v == null) {
+            return null;
+        }
+        synchronized(accessLock) {
+            return v.get(this);
+        }
+    }
+
+    // a value set during a slice of another thread is set after the slice
+    void setVarValue(String name, Object value) {
+        Variable v = getVar(name);
+        if(v == null) {
+            throw new IllegalArgumentException(String.format("unknown variable '%s'", name));
+        }
+        synchronized(accessLock) {
+            if(runner == null || runner == Thread.currentThread()) {
+                v.set(this, value);
+                return;
+            }
+            if(pendingVars == null) {
+                pendingVars = new LinkedHashMap<>();
+            }
+            pendingVars.put(v, value);
+        }
+    }
+
+    void setEvent(String event) {
+        setVar(eventVar, event);
     }
 
     public boolean isEventLoaded(String event) {
@@ -379,19 +791,4 @@ public final class Script {
     public void addTimer(long l) {
         endTime -= l * 1000000;
     }
-
-    public void mergeFunctions(HashMap<String, Integer> importedFunctions) {
-        // Offset function addresses by current code length if needed
-        // For now, assume functions are resolved at compile time
-        functions.putAll(importedFunctions);
-    }
-
-    public void mergeVariables(HashMap<String, Variable> importedVariables) {
-        vars.putAll(importedVariables);
-    }
-
-    public void mergeLabels(HashMap<String, Integer> importedLabels) {
-        labels.putAll(importedLabels);
-    }
-
 }
@@ -1,20 +1,52 @@
 package me.hammerle.snuviscript.code;
 
 import me.hammerle.snuviscript.inputprovider.InputProvider;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Set;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import me.hammerle.snuviscript.exceptions.PreScriptException;
 import me.hammerle.snuviscript.exceptions.StackTrace;
 
 public class ScriptManager {
+    public static final long DEFAULT_TIME_SLICE = 15_000_000;
+    public static final int DEFAULT_PRIORITY = 10;
+    public static final int DEFAULT_MAX_CALL_DEPTH = 1024;
+
     private final ISnuviLogger logger;
     private final ISnuviScheduler scheduler;
 
     private final ConcurrentHashMap<Integer, Script> scripts = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, Set<Script>> loadedEvents = new ConcurrentHashMap<>();
+    private final EventIndex events = new EventIndex();
+    private ExecutorService workers = null;
+    private ExecutionEngine engine = ExecutionEngine.STACK;
+    private long timeSlice = DEFAULT_TIME_SLICE;
+    private long instructionBudget = 0;
+    private int maxCallDepth = DEFAULT_MAX_CALL_DEPTH;
+    private final ProgramCache programs = new ProgramCache();
+    private final ImportCache imports = new ImportCache();
+    private final ImportResolver importResolver = new ImportResolver();
+    private File precompiledDirectory = null;
+    private HotReloader hotReloader = null;
+    // scripts which used up their slice, the one with the least weighted cpu time runs first
+    private final PriorityQueue<Script> throttled =
+            new PriorityQueue<>(Comparator.comparingDouble(Script::getVirtualRuntime));
+    private boolean tickScheduled = false;
+    // the script currently resumed by the fair share tick
+    private volatile Script resumed = null;
+    private long tickBudget = DEFAULT_TIME_SLICE;
 
     public ScriptManager(ISnuviLogger logger, ISnuviScheduler scheduler) {
         this.logger = logger;
@@ -41,19 +73,145 @@ public class ScriptManager {
         FunctionRegistry.registerAlias(original, alias);
     }
 
+    // scripts receiving the same event are run in parallel on the given pool, the logger, the
+    // scheduler and the event callbacks have to be thread safe in that case, a script accessing
+    // another script never waits for its slice, values set by it and terminations take effect
+    // after the slice
+    public void setWorkerPool(ExecutorService workers) {
+        this.workers = workers;
+    }
+
+    // only affects scripts started afterwards
+    public void setExecutionEngine(ExecutionEngine engine) {
+        this.engine = engine;
+    }
+
+    public ExecutionEngine getExecutionEngine() {
+        return engine;
+    }
+
+    // defaults for scripts started afterwards, see Script.setTimeSlice
+    public void setTimeSlice(long nanos) {
+        this.timeSlice = nanos;
+    }
+
+    public long getTimeSlice() {
+        return timeSlice;
+    }
+
+    // defaults for scripts started afterwards, see Script.setInstructionBudget
+    public void setInstructionBudget(long instructions) {
+        this.instructionBudget = instructions;
+    }
+
+    public long getInstructionBudget() {
+        return instructionBudget;
+    }
+
+    // defaults for scripts started afterwards, see Script.setMaxCallDepth
+    public void setMaxCallDepth(int depth) {
+        this.maxCallDepth = depth;
+    }
+
+    public int getMaxCallDepth() {
+        return maxCallDepth;
+    }
+
+    // nanoseconds per tick shared by all throttled scripts, the rest of the tick is left to the
+    // host and to event handlers
+    public void setTickBudget(long nanos) {
+        this.tickBudget = nanos;
+    }
+
+    public long getTickBudget() {
+        return tickBudget;
+    }
+
+    void throttle(Script sc) {
+        synchronized(throttled) {
+            // scripts coming from outside must not get ahead of the ones already waiting
+            Script first = throttled.peek();
+            if(sc != resumed && first != null
+                    && first.getVirtualRuntime() > sc.getVirtualRuntime()) {
+                sc.setVirtualRuntime(first.getVirtualRuntime());
+            }
+            throttled.add(sc);
+            if(!tickScheduled) {
+                tickScheduled = true;
+                scheduler.scheduleTask("fair share", this::runThrottled, 1);
+            }
+        }
+    }
+
+    private Script nextThrottled() {
+        synchronized(throttled) {
+            return throttled.poll();
+        }
+    }
+
+    private void runThrottled() {
+        long end = System.nanoTime() + tickBudget;
+        HashMap<Script, Long> used = new HashMap<>();
+        ArrayList<Script> deferred = new ArrayList<>();
+        while(true) {
+            long now = System.nanoTime();
+            Script sc = nextThrottled();
+            if(sc == null) {
+                break;
+            } else if(sc.shouldTerm()) {
+                continue;
+            } else if(now >= end) {
+                deferred.add(sc);
+                break;
+            }
+            long slice = Math.min(sc.getTimeSlice(), end - now);
+            long usedTime = used.getOrDefault(sc, 0L);
+            if(sc.getQuota() > 0) {
+                slice = Math.min(slice, sc.getQuota() - usedTime);
+            }
+            if(slice <= 0) {
+                deferred.add(sc);
+                continue;
+            }
+            long cpuTime = sc.getCpuTime();
+            // a script which needs more time is throttled again by runSlice
+            sc.setHolded(false);
+            resumed = sc;
+            sc.runSlice(slice);
+            resumed = null;
+            used.put(sc, usedTime + sc.getCpuTime() - cpuTime);
+            if(sc.shouldTerm()) {
+                removeScript(sc);
+            }
+        }
+        synchronized(throttled) {
+            throttled.addAll(deferred);
+            tickScheduled = !throttled.isEmpty();
+            if(tickScheduled) {
+                scheduler.scheduleTask("fair share", this::runThrottled, 1);
+            }
+        }
+    }
+
     public Script getScript(int id) {
         return scripts.get(id);
     }
 
     public void removeScript(Script sc) {
-        sc.term();
+        if(!sc.term()) {
+            // the thread running the script removes it after the slice
+            return;
+        }
         sc.onTerm();
         scripts.remove(sc.getId());
-        loadedEvents.values().forEach(list -> list.remove(sc));
+        events.remove(sc);
     }
 
     private void addScript(Script sc) {
         scripts.put(sc.getId(), sc);
+        if(hotReloader != null) {
+            hotReloader.track(sc.getProgram());
+        }
         sc.run();
         if(sc.shouldTerm()) {
             removeScript(sc);
@@ -61,12 +219,15 @@ public class ScriptManager {
     }
 
     public void removeScripts() {
+        synchronized(throttled) {
+            throttled.clear();
+        }
         scripts.values().forEach(sc -> {
             sc.term();
             sc.onTerm();
         });
         scripts.clear();
-        loadedEvents.values().forEach(list -> list.clear());
+        events.clear();
     }
 
     public Collection<Script> getScripts() {
@@ -78,49 +239,195 @@ public class ScriptManager {
             return null;
         }
         try {
-            Script sc = new Script(this, onTerm, name, paths);
-            addScript(sc);
-            return sc;
+            return startScript(onTerm, name, getProgram(paths));
         } catch(PreScriptException ex) {
-            logger.print(null, ex, null, paths[0], null, new StackTrace(ex.getLine()));
+            logCompileError(ex, paths[0]);
             return null;
         }
     }
 
+    void logCompileError(PreScriptException ex, String path) {
+        logger.print(null, ex, null, path, null, new StackTrace(ex.getLine(), ex.getSourceMap()));
+    }
+
+    // compiles all scripts in parallel and starts them on the calling thread in the given
+    // order, scripts which do not compile are logged and null in the returned list
+    public List<Script> startScripts(List<ScriptSpec> specs) {
+        List<Program> programs = new ArrayList<>(specs.size());
+        // shared imports are only checked once for all scripts
+        importResolver.beginBatch();
+        try {
+            List<ForkJoinTask<Program>> tasks = new ArrayList<>(specs.size());
+            for(ScriptSpec spec : specs) {
+                tasks.add(spec.getPaths().length == 0 ? null
+                        : ForkJoinPool.commonPool().submit(() -> getProgram(spec.getPaths())));
+            }
+            for(int i = 0; i < specs.size(); i++) {
+                programs.add(getCompiled(tasks.get(i), specs.get(i)));
+            }
+        } finally {
+            importResolver.endBatch();
+        }
+        List<Script> started = new ArrayList<>(specs.size());
+        for(int i = 0; i < specs.size(); i++) {
+            ScriptSpec spec = specs.get(i);
+            Program program = programs.get(i);
+            started.add(program == null ? null
+                    : startScript(spec.getOnTerm(), spec.getName(), program));
+        }
+        return started;
+    }
+
+    private Program getCompiled(ForkJoinTask<Program> task, ScriptSpec spec) {
+        if(task == null) {
+            return null;
+        }
+        try {
+            return task.get();
+        } catch(ExecutionException ex) {
+            if(!(ex.getCause() instanceof PreScriptException)) {
+                throw new IllegalStateException(ex.getCause());
+            }
+            logCompileError((PreScriptException) ex.getCause(), spec.getPaths()[0]);
+            return null;
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // one program can start any number of scripts, it is compiled again once a file changes
+    public Program getProgram(String... paths) {
+        return programs.get(this, paths);
+    }
+
+    public Script startScript(Consumer<Script> onTerm, String name, Program program) {
+        Script sc = new Script(this, onTerm, name, program);
+        addScript(sc);
+        return sc;
+    }
+
+    // compiled scripts are written to and read from this directory, null disables it
+    public void setPrecompiledDirectory(File directory) {
+        this.precompiledDirectory = directory;
+    }
+
+    public File getPrecompiledDirectory() {
+        return precompiledDirectory;
+    }
+
+    // scripts started afterwards compile their files again, even if they did not change
+    public void clearProgramCache() {
+        programs.clear();
+        imports.clear();
+        importResolver.clear();
+    }
+
+    // programs are linked again from the compiled imports
+    void clearPrograms() {
+        programs.clear();
+    }
+
+    // directories searched for imports before the directory of the importing file
+    public void setImportRoots(List<File> roots) {
+        importResolver.setRoots(roots);
+    }
+
+    public List<File> getImportRoots() {
+        return importResolver.getRoots();
+    }
+
+    ImportResolver getImportResolver() {
+        return importResolver;
+    }
+
+    ImportCache getImportCache() {
+        return imports;
+    }
+
+    // watches the files and imports of running scripts and compiles them again once they change,
+    // the handler gets every affected script with its new program through the scheduler, which
+    // has to accept tasks from the watcher thread
+    public void enableHotReload(BiConsumer<Script, Program> handler) throws IOException {
+        disableHotReload();
+        hotReloader = new HotReloader(this, handler);
+        scripts.values().forEach(sc -> hotReloader.track(sc.getProgram()));
+        importResolver.setWatcher(hotReloader);
+    }
+
+    // affected scripts are restarted, see restartScript
+    public void enableHotReload() throws IOException {
+        enableHotReload(this::restartScript);
+    }
+
+    public void disableHotReload() {
+        if(hotReloader != null) {
+            importResolver.setWatcher(null);
+            hotReloader.close();
+            hotReloader = null;
+        }
+    }
+
+    // terminates the script and starts the program with the same name and term callback, the
+    // values of the old script are lost
+    public Script restartScript(Script sc, Program program) {
+        removeScript(sc);
+        return startScript(sc.getOnTerm(), sc.getName(), program);
+    }
+
     public Script startScript(String name, String... paths) {
         return startScript(sc -> {
         }, name, paths);
     }
 
     public void loadEvent(String event, Script sc) {
-        Set<Script> set = loadedEvents.get(event);
-        if(set == null) {
-            set = Collections.newSetFromMap(new ConcurrentHashMap<>());
-            loadedEvents.put(event, set);
-        }
-        set.add(sc);
+        events.add(event, sc);
     }
 
     public void unloadEvent(String event, Script sc) {
-        Set<Script> set = loadedEvents.get(event);
-        if(set != null) {
-            set.remove(sc);
-        }
+        events.remove(event, sc);
     }
 
     public void callEvent(String name, Consumer<Script> before, Consumer<Script> after) {
-        Set<Script> set = loadedEvents.get(name);
-        if(set == null) {
+        Script[] scripts = events.get(name);
+        if(scripts.length == 0) {
+            return;
+        }
+        if(workers != null) {
+            callEventParallel(scripts, name, before, after);
             return;
         }
         try {
-            set.stream().filter(sc -> !sc.isHolded() && sc.isWaiting())
-                    .forEach(sc -> runEvent(name, sc, before, after));
+            for(Script sc : scripts) {
+                if(!sc.isHolded() && sc.isWaiting()) {
+                    runEvent(name, sc, before, after);
+                }
+            }
         } catch(Exception ex) {
             ex.printStackTrace();
         }
     }
 
+    private void callEventParallel(Script[] scripts, String name, Consumer<Script> before,
+            Consumer<Script> after) {
+        ArrayList<Future<?>> tasks = new ArrayList<>();
+        for(Script sc : scripts) {
+            if(!sc.isHolded() && sc.isWaiting()) {
+                tasks.add(workers.submit(() -> runEvent(name, sc, before, after)));
+            }
+        }
+        for(Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch(ExecutionException ex) {
+                ex.getCause().printStackTrace();
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
     public boolean callEvent(String name, Script sc, Consumer<Script> before,
             Consumer<Script> after) {
         if(sc.isEventLoaded(name) && !sc.isHolded() && sc.isWaiting()) {
@@ -131,7 +438,7 @@ public class ScriptManager {
     }
 
     private void runEvent(String name, Script sc, Consumer<Script> before, Consumer<Script> after) {
-        sc.setVar("event", name);
+        sc.setEvent(name);
         before.accept(sc);
         sc.run();
         after.accept(sc);
@@ -0,0 +1,33 @@
+package me.hammerle.snuviscript.code;
+
+import java.util.function.Consumer;
+
+// a script for ScriptManager.startScripts
+public final class ScriptSpec {
+    private final Consumer<Script> onTerm;
+    private final String name;
+    private final String[] paths;
+
+    public ScriptSpec(Consumer<Script> onTerm, String name, String... paths) {
+        this.onTerm = onTerm;
+        this.name = name;
+        this.paths = paths;
+    }
+
+    public ScriptSpec(String name, String... paths) {
+        this(sc -> {
+        }, name, paths);
+    }
+
+    public Consumer<Script> getOnTerm() {
+        return onTerm;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String[] getPaths() {
+        return paths;
+    }
+}
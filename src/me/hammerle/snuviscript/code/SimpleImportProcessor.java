@@ -1,22 +1,24 @@
 package me.hammerle.snuviscript.code;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import me.hammerle.snuviscript.exceptions.PreScriptException;
 
 public class SimpleImportProcessor {
     private final Set<String> processedFiles = new HashSet<>();
     private final List<String> fileOrder = new ArrayList<>();
-    private final String projectRoot;
+    private final List<ImportResolver.Source> sources = new ArrayList<>();
+    private final ImportResolver resolver;
 
+    // the path is not used, imports are searched in the default roots
     public SimpleImportProcessor(String mainScriptPath) {
-        this.projectRoot = "/home/minecraft/scripts/";
+        this(new ImportResolver());
+    }
+
+    SimpleImportProcessor(ImportResolver resolver) {
+        this.resolver = resolver;
     }
 
     public List<String> processImportsToFileList(String filePath) {
@@ -30,6 +32,11 @@ public class SimpleImportProcessor {
         return new ArrayList<>(fileOrder);
     }
 
+    // in the order of getFileOrder
+    List<ImportResolver.Source> getSources() {
+        return sources;
+    }
+
     private void processImportsRecursive(String absolutePath, List<String> fileContents) {
         if(processedFiles.contains(absolutePath)) {
             return;
@@ -37,86 +44,14 @@ public class SimpleImportProcessor {
 
         processedFiles.add(absolutePath);
 
-        String sourceCode = readFile(absolutePath);
-        String[] lines = sourceCode.split("\\r?\\n");
-
-        // First pass: process all imports
-        for(String line : lines) {
-            String trimmedLine = line.trim();
-            if(trimmedLine.startsWith("import ")) {
-                String importPath = extractImportPath(trimmedLine);
-                if(importPath != null) {
-                    String resolvedPath = resolveImportPath(importPath, absolutePath);
-                    processImportsRecursive(resolvedPath, fileContents);
-                }
-            }
-        }
-
-        // Second pass: build the content without imports, preserving line numbers
-        StringBuilder result = new StringBuilder();
-
-        for(String line : lines) {
-            String trimmedLine = line.trim();
-            if(trimmedLine.startsWith("import ")) {
-                // Add empty line to preserve line numbers
-                result.append("\n");
-            } else {
-                result.append(line).append("\n");
-            }
+        // imports come before the file, their lines are already blanked in the content
+        ImportResolver.Source source = resolver.read(absolutePath);
+        for(String importPath : source.imports) {
+            processImportsRecursive(resolver.resolve(importPath, absolutePath), fileContents);
         }
 
         fileOrder.add(absolutePath);
-        fileContents.add(result.toString());
-    }
-
-    private String extractImportPath(String importLine) {
-        int firstQuote = importLine.indexOf('"');
-        int lastQuote = importLine.lastIndexOf('"');
-
-        if(firstQuote != -1 && lastQuote != -1 && firstQuote < lastQuote) {
-            return importLine.substring(firstQuote + 1, lastQuote);
-        }
-
-        throw new PreScriptException("Invalid import syntax: " + importLine, -1);
-    }
-
-    private String resolveImportPath(String importPath, String currentFilePath) {
-        // Auto-add .snuvi extension if not present
-        if(!importPath.endsWith(".snuvi")) {
-            importPath += ".snuvi";
-        }
-
-        File importFile = new File(importPath);
-        if(importFile.isAbsolute()) {
-            return importFile.getAbsolutePath();
-        }
-
-        // Try project root first (for paths like "utils/msg")
-        File projectRootFile = new File(projectRoot, importPath);
-        if(projectRootFile.exists()) {
-            return projectRootFile.getAbsolutePath();
-        }
-
-        // Fall back to relative to current file's directory
-        File currentFile = new File(currentFilePath);
-        String currentDir = currentFile.getParent();
-        File resolved = new File(currentDir, importPath);
-        return resolved.getAbsolutePath();
-    }
-
-    private String readFile(String filePath) {
-        try {
-            StringBuilder content = new StringBuilder();
-            try(BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-                String line;
-                while((line = reader.readLine()) != null) {
-                    content.append(line).append("\n");
-                }
-            }
-            return content.toString();
-        } catch(IOException ex) {
-            throw new PreScriptException("Cannot read file: " + filePath + " - " + ex.getMessage(),
-                    -1);
-        }
+        sources.add(source);
+        fileContents.add(source.content);
     }
 }
@@ -1,13 +1,11 @@
 package me.hammerle.snuviscript.code;
 
 import me.hammerle.snuviscript.inputprovider.InputProvider;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class SnuviUtils {
-    private static final Random RANDOM = new Random();
-
     public static int randomInt(int min, int max) {
-        return RANDOM.nextInt((max - min) + 1) + min;
+        return ThreadLocalRandom.current().nextInt((max - min) + 1) + min;
     }
 
     public static String toString(double d) {
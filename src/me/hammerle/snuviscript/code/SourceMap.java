@@ -0,0 +1,60 @@
+package me.hammerle.snuviscript.code;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// lines of a program are counted through all of its files, the map holds the first line of each
+// file and turns a line back into a file and a line inside of that file
+public final class SourceMap {
+    private final List<String> files;
+    private final String[] names;
+    private final int[] starts;
+
+    // starts can be shorter than files if tokenizing stopped early
+    public SourceMap(List<String> files, int[] starts) {
+        this.files = Collections.unmodifiableList(files);
+        this.starts = starts;
+        names = new String[files.size()];
+        for(int i = 0; i < names.length; i++) {
+            String name = new File(files.get(i)).getName();
+            // Remove .snuvi extension for cleaner display
+            if(name.endsWith(".snuvi")) {
+                name = name.substring(0, name.length() - 6);
+            }
+            names[i] = name;
+        }
+    }
+
+    public List<String> getFiles() {
+        return files;
+    }
+
+    int[] getStarts() {
+        return starts;
+    }
+
+    // returns -1 if the line is in no file
+    public int getFile(int line) {
+        int i = Arrays.binarySearch(starts, line);
+        if(i < 0) {
+            i = -i - 2;
+        }
+        return i < names.length ? i : -1;
+    }
+
+    public String getFileName(int line) {
+        int file = getFile(line);
+        return file < 0 ? "unknown" : names[file];
+    }
+
+    public int getFileLine(int line) {
+        int file = getFile(line);
+        return file < 0 ? line : line - starts[file] + 1;
+    }
+
+    public String format(int line) {
+        return getFileName(line) + ":" + getFileLine(line);
+    }
+}
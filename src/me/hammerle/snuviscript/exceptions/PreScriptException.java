@@ -1,15 +1,28 @@
 package me.hammerle.snuviscript.exceptions;
 
+import me.hammerle.snuviscript.code.SourceMap;
+
 public class PreScriptException extends RuntimeException {
     private static final long serialVersionUID = 1L;
     private final int line;
+    // resolves the line, null if the files are unknown
+    private final transient SourceMap sourceMap;
 
     public PreScriptException(String message, int line) {
+        this(message, line, null);
+    }
+
+    public PreScriptException(String message, int line, SourceMap sourceMap) {
         super(message);
         this.line = line;
+        this.sourceMap = sourceMap;
     }
 
     public int getLine() {
         return line;
     }
+
+    public SourceMap getSourceMap() {
+        return sourceMap;
+    }
 }
@@ -1,39 +1,38 @@
 package me.hammerle.snuviscript.exceptions;
 
-import java.util.Stack;
-import me.hammerle.snuviscript.code.FileRegistry;
+import me.hammerle.snuviscript.code.IntStack;
+import me.hammerle.snuviscript.code.SourceMap;
 import me.hammerle.snuviscript.instructions.Instruction;
 
 public class StackTrace {
     private final String stackTrace;
 
-    public StackTrace(int currentLine, Stack<Integer> stack, Instruction[] code) {
-        if(stack == null || code == null) {
-            int file = (currentLine >> 24) & 0xFF;
-            int line = currentLine & 0xFFFFFF;
-            String fileName = FileRegistry.getFileName(file);
-            stackTrace = String.format("%s:%d", fileName, line);
-            return;
-        }
+    public StackTrace(int currentLine, IntStack stack, Instruction[] code, SourceMap sourceMap) {
         StringBuilder sb = new StringBuilder();
-        stack.forEach(stackLine -> {
-            int lineNum = code[stackLine].getLine();
-            int file = (lineNum >> 24) & 0xFF;
-            lineNum &= 0xFFFFFF;
-            String fileName = FileRegistry.getFileName(file);
-            sb.append(fileName).append(":").append(lineNum).append(" > ");
-        });
-
-        int file = (currentLine >> 24) & 0xFF;
-        int line = currentLine & 0xFFFFFF;
-        String fileName = FileRegistry.getFileName(file);
-        sb.append(fileName).append(":").append(line);
-
+        if(stack != null && code != null) {
+            for(int i = 0; i < stack.size(); i++) {
+                append(sb, code[stack.get(i)].getLine(), sourceMap);
+                sb.append(" > ");
+            }
+        }
+        append(sb, currentLine, sourceMap);
         stackTrace = sb.toString();
     }
 
+    public StackTrace(int currentLine, SourceMap sourceMap) {
+        this(currentLine, null, null, sourceMap);
+    }
+
     public StackTrace(int currentLine) {
-        this(currentLine, null, null);
+        this(currentLine, null, null, null);
+    }
+
+    private static void append(StringBuilder sb, int line, SourceMap sourceMap) {
+        if(sourceMap == null) {
+            sb.append("unknown:").append(line);
+        } else {
+            sb.append(sourceMap.format(line));
+        }
     }
 
     @Override
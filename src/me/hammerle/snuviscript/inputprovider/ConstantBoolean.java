@@ -17,6 +17,11 @@ public class ConstantBoolean extends InputProvider {
         return b;
     }
 
+    @Override
+    public boolean isDouble(Script sc) {
+        return false;
+    }
+
     @Override
     public String getString(Script sc) {
         return String.valueOf(b);
@@ -20,6 +20,11 @@ public class ConstantDouble extends InputProvider {
         return d;
     }
 
+    @Override
+    public boolean isDouble(Script sc) {
+        return true;
+    }
+
     @Override
     public String getString(Script sc) {
         return SnuviUtils.toString(d);
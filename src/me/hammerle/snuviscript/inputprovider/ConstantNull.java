@@ -13,6 +13,11 @@ public class ConstantNull extends InputProvider {
         return null;
     }
 
+    @Override
+    public boolean isDouble(Script sc) {
+        return false;
+    }
+
     @Override
     public String getString(Script sc) {
         return "null";
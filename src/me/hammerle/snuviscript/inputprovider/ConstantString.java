@@ -14,6 +14,11 @@ public class ConstantString extends InputProvider {
         return s;
     }
 
+    @Override
+    public boolean isDouble(Script sc) {
+        return false;
+    }
+
     @Override
     public String getString(Script sc) {
         return s;
@@ -0,0 +1,41 @@
+package me.hammerle.snuviscript.inputprovider;
+
+import me.hammerle.snuviscript.code.Script;
+
+public class DoubleReturnWrapper extends InputProvider {
+    private double d;
+
+    public void setValue(double d) {
+        this.d = d;
+    }
+
+    @Override
+    public Object get(Script sc) {
+        return d;
+    }
+
+    @Override
+    public double getDouble(Script sc) {
+        return d;
+    }
+
+    @Override
+    public boolean isDouble(Script sc) {
+        return true;
+    }
+
+    @Override
+    public String getString(Script sc) {
+        return String.valueOf(d);
+    }
+
+    @Override
+    public boolean getBoolean(Script sc) {
+        return (Boolean) get(sc);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ReturnWrapper(%s)", d);
+    }
+}
@@ -0,0 +1,20 @@
+package me.hammerle.snuviscript.inputprovider;
+
+// result of a pure function evaluated at compile time, it behaves like the return value the
+// function would have produced at runtime
+public class FoldedValue extends ReturnWrapper {
+    public FoldedValue(Object o) {
+        super.setValue(o);
+    }
+
+    @Override
+    public void setValue(Object o) {
+        throw new UnsupportedOperationException("folded values are constant");
+    }
+
+    @Override
+    public String toString() {
+        Object o = get(null);
+        return o instanceof String ? "\"" + o + "\"" : String.valueOf(o);
+    }
+}
@@ -39,6 +39,10 @@ public abstract class InputProvider {
         throw new ClassCastException();
     }
 
+    public boolean isDouble(Script sc) {
+        return get(sc) instanceof Double;
+    }
+
     public void set(Script sc, Object o) {
         throw new ClassCastException();
     }
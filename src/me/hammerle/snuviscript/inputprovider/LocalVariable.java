@@ -3,8 +3,8 @@ package me.hammerle.snuviscript.inputprovider;
 import me.hammerle.snuviscript.code.Script;
 
 public class LocalVariable extends Variable {
-    public LocalVariable(String name) {
-        super(name);
+    public LocalVariable(String name, int index) {
+        super(name, index);
     }
 
     @Override
@@ -14,30 +14,31 @@ public class LocalVariable extends Variable {
 
     @Override
     public Object get(Script sc) {
-        return getVariable(sc).get(sc);
+        return sc.getLocal(index);
     }
 
     @Override
     public double getDouble(Script sc) {
-        return getVariable(sc).getDouble(sc);
+        return (double) sc.getLocal(index);
     }
 
     @Override
-    public String getString(Script sc) {
-        return getVariable(sc).getString(sc);
+    public boolean isDouble(Script sc) {
+        return sc.getLocal(index) instanceof Double;
     }
 
     @Override
-    public boolean getBoolean(Script sc) {
-        return getVariable(sc).getBoolean(sc);
+    public String getString(Script sc) {
+        return String.valueOf(sc.getLocal(index));
     }
 
-    private Variable getVariable(Script sc) {
-        return sc.getOrAddLocalVariable(name);
+    @Override
+    public boolean getBoolean(Script sc) {
+        return (boolean) sc.getLocal(index);
     }
 
     @Override
     public void set(Script sc, Object o) {
-        getVariable(sc).set(sc, o);
+        sc.setLocal(index, o);
     }
 }
@@ -19,6 +19,11 @@ public class ReturnWrapper extends InputProvider {
         return (double) o;
     }
 
+    @Override
+    public boolean isDouble(Script sc) {
+        return o instanceof Double;
+    }
+
     @Override
     public String getString(Script sc) {
         return String.valueOf(o);
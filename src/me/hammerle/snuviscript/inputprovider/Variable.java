@@ -4,17 +4,21 @@ import me.hammerle.snuviscript.code.Script;
 
 public class Variable extends InputProvider {
     protected final String name;
-    private Object o;
+    protected final int index;
 
-    public Variable(String name) {
+    public Variable(String name, int index) {
         this.name = name;
-        this.o = null;
+        this.index = index;
     }
 
     public String getName() {
         return name;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
     @Override
     public String toString() {
         return name;
@@ -22,26 +26,31 @@ public class Variable extends InputProvider {
 
     @Override
     public Object get(Script sc) {
-        return o;
+        return sc.getGlobal(index);
     }
 
     @Override
     public double getDouble(Script sc) {
-        return (double) o;
+        return (double) sc.getGlobal(index);
+    }
+
+    @Override
+    public boolean isDouble(Script sc) {
+        return sc.getGlobal(index) instanceof Double;
     }
 
     @Override
     public String getString(Script sc) {
-        return String.valueOf(o);
+        return String.valueOf(sc.getGlobal(index));
     }
 
     @Override
     public boolean getBoolean(Script sc) {
-        return (boolean) o;
+        return (boolean) sc.getGlobal(index);
     }
 
     @Override
     public void set(Script sc, Object o) {
-        this.o = o;
+        sc.setGlobal(index, o);
     }
 }
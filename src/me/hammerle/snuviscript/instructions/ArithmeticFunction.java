@@ -0,0 +1,54 @@
+package me.hammerle.snuviscript.instructions;
+
+import me.hammerle.snuviscript.code.NamedFunction;
+import me.hammerle.snuviscript.code.Script;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+
+public class ArithmeticFunction extends Function {
+    private final char operator;
+
+    public ArithmeticFunction(int line, int arguments, NamedFunction function) {
+        super(line, arguments, function);
+        this.operator = function.getName().charAt(0);
+    }
+
+    public static boolean isSupported(String name, int arguments) {
+        switch(name) {
+            case "+":
+            case "*":
+            case "/":
+                return arguments == 2;
+            case "-":
+                return arguments == 1 || arguments == 2;
+        }
+        return false;
+    }
+
+    @Override
+    public InputProvider execute(Script sc, InputProvider[] in) throws Exception {
+        double a = in[0].getDouble(sc);
+        double d;
+        if(in.length == 1) {
+            d = -a;
+        } else {
+            double b = in[1].getDouble(sc);
+            switch(operator) {
+                case '+':
+                    d = a + b;
+                    break;
+                case '-':
+                    d = a - b;
+                    break;
+                case '*':
+                    d = a * b;
+                    break;
+                default:
+                    d = a / b;
+            }
+        }
+        if(!shouldNotReturnValue()) {
+            sc.pushDouble(d);
+        }
+        return null;
+    }
+}
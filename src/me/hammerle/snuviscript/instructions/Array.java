@@ -1,6 +1,5 @@
 package me.hammerle.snuviscript.instructions;
 
-import me.hammerle.snuviscript.inputprovider.ArrayReturnWrapper;
 import me.hammerle.snuviscript.inputprovider.InputProvider;
 import me.hammerle.snuviscript.code.Script;
 import me.hammerle.snuviscript.inputprovider.Variable;
@@ -8,7 +7,6 @@ import me.hammerle.snuviscript.inputprovider.Variable;
 public class Array extends Instruction {
 
     private final int arguments;
-    private final ArrayReturnWrapper wrapper = new ArrayReturnWrapper();
     private final Variable v;
 
     public Array(int line, int arguments, Variable v) {
@@ -17,14 +15,18 @@ public class Array extends Instruction {
         this.v = v;
     }
 
+    public Variable getVariable() {
+        return v;
+    }
+
     @Override
     public InputProvider execute(Script sc, InputProvider[] in) throws Exception {
         Object o = v.get(sc);
         for(int i = 0; i < in.length - 1; i++) {
             o = java.lang.reflect.Array.get(o, in[i].getInt(sc));
         }
-        wrapper.setValue(o, in[in.length - 1].getInt(sc));
-        return wrapper;
+        sc.pushArrayElement(o, in[in.length - 1].getInt(sc));
+        return null;
     }
 
     @Override
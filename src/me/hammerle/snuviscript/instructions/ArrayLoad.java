@@ -0,0 +1,56 @@
+package me.hammerle.snuviscript.instructions;
+
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+import me.hammerle.snuviscript.code.Script;
+import me.hammerle.snuviscript.inputprovider.Variable;
+
+// push i, push a[] with indices which do not need the data stack
+public class ArrayLoad extends Instruction {
+    private final Variable v;
+    private final InputProvider[] indices;
+
+    public ArrayLoad(int line, Variable v, InputProvider[] indices) {
+        super(line);
+        this.v = v;
+        this.indices = indices;
+    }
+
+    public Variable getVariable() {
+        return v;
+    }
+
+    public InputProvider[] getIndices() {
+        return indices;
+    }
+
+    @Override
+    public InputProvider execute(Script sc, InputProvider[] in) throws Exception {
+        Object o = v.get(sc);
+        for(int i = 0; i < indices.length - 1; i++) {
+            o = java.lang.reflect.Array.get(o, indices[i].getInt(sc));
+        }
+        sc.pushArrayElement(o, indices[indices.length - 1].getInt(sc));
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("push ");
+        sb.append(v);
+        sb.append("[");
+        for(int i = 0; i < indices.length; i++) {
+            if(i > 0) {
+                sb.append(",");
+            }
+            sb.append(indices[i]);
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    @Override
+    public String getName() {
+        return "array";
+    }
+}
@@ -0,0 +1,73 @@
+package me.hammerle.snuviscript.instructions;
+
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+import me.hammerle.snuviscript.code.Script;
+
+// push a, push b, use <(2), if / while / for
+public class CompareBranch extends Goto {
+    private final InputProvider left;
+    private final InputProvider right;
+    private final CompareFunction compare;
+    private final Goto branch;
+    // for loops jump from the condition to the for instruction, -1 continues with the next one
+    private int trueJump = -1;
+
+    public CompareBranch(InputProvider left, InputProvider right, CompareFunction compare,
+            Goto branch) {
+        super(compare.getLine(), 0);
+        this.left = left;
+        this.right = right;
+        this.compare = compare;
+        this.branch = branch;
+        setJump(branch.getJump());
+    }
+
+    public InputProvider getLeft() {
+        return left;
+    }
+
+    public InputProvider getRight() {
+        return right;
+    }
+
+    public CompareFunction getCompare() {
+        return compare;
+    }
+
+    public Goto getBranch() {
+        return branch;
+    }
+
+    public void setTrueJump(int value) {
+        trueJump = value;
+    }
+
+    public int getTrueJump() {
+        return trueJump;
+    }
+
+    @Override
+    public InputProvider execute(Script sc, InputProvider[] o) throws Exception {
+        boolean b = compare.compare(sc, left, right);
+        if(branch instanceof If) {
+            sc.setIfState(b);
+        }
+        if(!b) {
+            sc.jumpTo(getJump());
+        } else if(trueJump >= 0) {
+            sc.jumpTo(trueJump);
+        }
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return compare.getName();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s %s %s, %d, %d)", branch.getName(), left,
+                compare.getName(), right, trueJump, getJump());
+    }
+}
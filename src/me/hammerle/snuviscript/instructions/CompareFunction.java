@@ -0,0 +1,77 @@
+package me.hammerle.snuviscript.instructions;
+
+import me.hammerle.snuviscript.code.NamedFunction;
+import me.hammerle.snuviscript.code.Script;
+import me.hammerle.snuviscript.inputprovider.ConstantBoolean;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+
+public class CompareFunction extends Function {
+    private static final int LESS = 0;
+    private static final int GREATER = 1;
+    private static final int LESS_EQUAL = 2;
+    private static final int GREATER_EQUAL = 3;
+
+    private final int operator;
+
+    public CompareFunction(int line, int arguments, NamedFunction function) {
+        super(line, arguments, function);
+        switch(function.getName()) {
+            case "<":
+                operator = LESS;
+                break;
+            case ">":
+                operator = GREATER;
+                break;
+            case "<=":
+                operator = LESS_EQUAL;
+                break;
+            default:
+                operator = GREATER_EQUAL;
+        }
+    }
+
+    public static boolean isSupported(String name, int arguments) {
+        switch(name) {
+            case "<":
+            case ">":
+            case "<=":
+            case ">=":
+                return arguments == 2;
+        }
+        return false;
+    }
+
+    @Override
+    public InputProvider execute(Script sc, InputProvider[] in) throws Exception {
+        if(!in[0].isDouble(sc) || !in[1].isDouble(sc)) {
+            return super.execute(sc, in);
+        }
+        if(shouldNotReturnValue()) {
+            return null;
+        }
+        boolean b = compare(in[0].getDouble(sc), in[1].getDouble(sc));
+        return b ? ConstantBoolean.TRUE : ConstantBoolean.FALSE;
+    }
+
+    public boolean compare(Script sc, InputProvider a, InputProvider b) throws Exception {
+        if(!a.isDouble(sc) || !b.isDouble(sc)) {
+            return (Boolean) getFunction().execute(sc, new InputProvider[] {a, b});
+        }
+        return compare(a.getDouble(sc), b.getDouble(sc));
+    }
+
+    private boolean compare(double a, double b) {
+        // same ordering as Double.compareTo used by the generic path
+        int c = Double.compare(a, b);
+        switch(operator) {
+            case LESS:
+                return c < 0;
+            case GREATER:
+                return c > 0;
+            case LESS_EQUAL:
+                return c <= 0;
+            default:
+                return c >= 0;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package me.hammerle.snuviscript.instructions;
+
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+import me.hammerle.snuviscript.code.Script;
+
+// if and else if without the if state, jumps when the condition is false
+public class ConditionalGoto extends Goto {
+    private final String name;
+
+    public ConditionalGoto(int line, String name, int jump) {
+        super(line, 1);
+        this.name = name;
+        setJump(jump);
+    }
+
+    @Override
+    public InputProvider execute(Script sc, InputProvider[] o) throws Exception {
+        if(!o[0].getBoolean(sc)) {
+            sc.jumpTo(getJump());
+        }
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s not goto(%d)", name, getJump());
+    }
+}
@@ -11,6 +11,10 @@ public class Constant extends Instruction {
         this.constant = constant;
     }
 
+    public InputProvider getConstant() {
+        return constant;
+    }
+
     @Override
     public InputProvider execute(Script sc, InputProvider[] o) throws Exception {
         return constant;
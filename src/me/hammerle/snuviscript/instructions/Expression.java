@@ -0,0 +1,37 @@
+package me.hammerle.snuviscript.instructions;
+
+import me.hammerle.snuviscript.code.Script;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+import me.hammerle.snuviscript.tree.Node;
+
+// evaluates a whole expression tree with one dispatch
+public class Expression extends Instruction {
+    private final Node root;
+    private final String name;
+
+    public Expression(int line, String name, Node root) {
+        super(line);
+        this.name = name;
+        this.root = root;
+    }
+
+    @Override
+    public InputProvider execute(Script sc, InputProvider[] o) throws Exception {
+        if(shouldNotReturnValue()) {
+            root.evaluate(sc);
+        } else {
+            root.push(sc);
+        }
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tree %s", root);
+    }
+}
@@ -1,6 +1,5 @@
 package me.hammerle.snuviscript.instructions;
 
-import me.hammerle.snuviscript.inputprovider.ReturnWrapper;
 import me.hammerle.snuviscript.code.NamedFunction;
 import me.hammerle.snuviscript.inputprovider.InputProvider;
 import me.hammerle.snuviscript.code.Script;
@@ -8,7 +7,6 @@ import me.hammerle.snuviscript.code.Script;
 public class Function extends Instruction {
     private final NamedFunction function;
     private final int arguments;
-    private final ReturnWrapper wrapper = new ReturnWrapper();
 
     public Function(int line, int arguments, NamedFunction function) {
         super(line);
@@ -16,14 +14,18 @@ public class Function extends Instruction {
         this.arguments = arguments;
     }
 
+    public NamedFunction getFunction() {
+        return function;
+    }
+
     @Override
     public InputProvider execute(Script sc, InputProvider[] in) throws Exception {
         Object o = function.execute(sc, in);
         if(o == Void.TYPE || shouldNotReturnValue()) {
             return null;
         }
-        wrapper.setValue(o);
-        return wrapper;
+        sc.pushValue(o);
+        return null;
     }
 
     @Override
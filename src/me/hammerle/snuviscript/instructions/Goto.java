@@ -3,7 +3,7 @@ package me.hammerle.snuviscript.instructions;
 import me.hammerle.snuviscript.inputprovider.InputProvider;
 import me.hammerle.snuviscript.code.Script;
 
-public class Goto extends Instruction {
+public class Goto extends Instruction implements Cloneable {
     private int jump;
     private final int arguments;
 
@@ -31,6 +31,17 @@ public class Goto extends Instruction {
         return jump;
     }
 
+    // linked instructions are shared by programs, so moved jumps are copies
+    public Goto withJump(int value) {
+        try {
+            Goto g = (Goto) clone();
+            g.jump = value;
+            return g;
+        } catch(CloneNotSupportedException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
     @Override
     public String getName() {
         return "goto";
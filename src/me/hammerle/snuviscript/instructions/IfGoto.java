@@ -11,6 +11,10 @@ public class IfGoto extends Goto {
         this.check = check;
     }
 
+    public boolean getCheck() {
+        return check;
+    }
+
     @Override
     public InputProvider execute(Script sc, InputProvider[] o) throws Exception {
         boolean b = sc.peekDataStack().getBoolean(sc);
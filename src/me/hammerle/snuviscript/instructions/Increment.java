@@ -0,0 +1,43 @@
+package me.hammerle.snuviscript.instructions;
+
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+import me.hammerle.snuviscript.code.Script;
+import me.hammerle.snuviscript.inputprovider.Variable;
+
+// push i, use p++(1) without using the result
+public class Increment extends Instruction {
+    private final Variable v;
+    private final double change;
+    private final String name;
+
+    public Increment(int line, Variable v, double change, String name) {
+        super(line);
+        this.v = v;
+        this.change = change;
+        this.name = name;
+    }
+
+    public Variable getVariable() {
+        return v;
+    }
+
+    public double getChange() {
+        return change;
+    }
+
+    @Override
+    public InputProvider execute(Script sc, InputProvider[] o) throws Exception {
+        v.set(sc, v.getDouble(sc) + change);
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("use %s(%s)", name, v);
+    }
+}
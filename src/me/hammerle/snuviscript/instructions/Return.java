@@ -2,7 +2,6 @@ package me.hammerle.snuviscript.instructions;
 
 import me.hammerle.snuviscript.inputprovider.InputProvider;
 import me.hammerle.snuviscript.code.Script;
-import me.hammerle.snuviscript.inputprovider.ReturnWrapper;
 
 public class Return extends Instruction {
     private final int arguments;
@@ -15,11 +14,9 @@ public class Return extends Instruction {
     @Override
     public InputProvider execute(Script sc, InputProvider[] o) throws Exception {
         if(o.length > 0) {
-            ReturnWrapper wrapper = new ReturnWrapper();
-            wrapper.setValue(o[0].get(sc));
-            sc.handleReturn(wrapper);
+            sc.handleReturn(o[0].get(sc));
         } else {
-            sc.handleReturn(null);
+            sc.handleReturn();
         }
         return null;
     }
@@ -1,12 +1,9 @@
 package me.hammerle.snuviscript.instructions;
 
-import me.hammerle.snuviscript.inputprovider.ReturnWrapper;
 import me.hammerle.snuviscript.inputprovider.InputProvider;
 import me.hammerle.snuviscript.code.Script;
 
 public class SignInverter extends Instruction {
-    private final ReturnWrapper wrapper = new ReturnWrapper();
-
     public SignInverter(int line) {
         super(line);
     }
@@ -18,8 +15,8 @@ public class SignInverter extends Instruction {
 
     @Override
     public InputProvider execute(Script sc, InputProvider[] o) throws Exception {
-        wrapper.setValue(-o[0].getDouble(sc));
-        return wrapper;
+        sc.pushDouble(-o[0].getDouble(sc));
+        return null;
     }
 
     @Override
@@ -0,0 +1,17 @@
+package me.hammerle.snuviscript.instructions;
+
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+import me.hammerle.snuviscript.code.Script;
+
+// a call of a user function directly followed by a return of its value
+public class TailCall extends UserCall {
+    public TailCall(int line, String name, int arguments, int target, UserFunction function) {
+        super(line, name, arguments, target, function);
+    }
+
+    @Override
+    public InputProvider execute(Script sc, InputProvider[] in) throws Exception {
+        sc.tailCall(getTarget(), getFunction(), getName(), in);
+        return null;
+    }
+}
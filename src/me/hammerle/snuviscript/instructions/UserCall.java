@@ -0,0 +1,49 @@
+package me.hammerle.snuviscript.instructions;
+
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+import me.hammerle.snuviscript.code.Script;
+
+// a call of a user function which is bound to its target while linking
+public class UserCall extends Instruction {
+    private final String name;
+    private final int arguments;
+    private final int target;
+    private final UserFunction function;
+
+    public UserCall(int line, String name, int arguments, int target, UserFunction function) {
+        super(line);
+        this.name = name;
+        this.arguments = arguments;
+        this.target = target;
+        this.function = function;
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    public UserFunction getFunction() {
+        return function;
+    }
+
+    @Override
+    public InputProvider execute(Script sc, InputProvider[] in) throws Exception {
+        sc.callFunction(target, function, name, in);
+        return null;
+    }
+
+    @Override
+    public int getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("use %s(%d)", name, arguments);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+}
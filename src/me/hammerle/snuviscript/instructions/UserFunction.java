@@ -6,6 +6,7 @@ import me.hammerle.snuviscript.code.Script;
 public class UserFunction extends Goto {
     private final String[] vars;
     private final String name;
+    private int locals;
 
     public UserFunction(int line, String name, String[] vars) {
         super(line, 0);
@@ -23,6 +24,14 @@ public class UserFunction extends Goto {
         return vars;
     }
 
+    public void setLocals(int locals) {
+        this.locals = locals;
+    }
+
+    public int getLocals() {
+        return locals;
+    }
+
     @Override
     public String getName() {
         return name;
@@ -3,13 +3,28 @@ package me.hammerle.snuviscript.test;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
+import me.hammerle.snuviscript.code.ExecutionEngine;
+import me.hammerle.snuviscript.code.Program;
 import me.hammerle.snuviscript.code.Script;
 import me.hammerle.snuviscript.code.ScriptManager;
+import me.hammerle.snuviscript.code.ScriptSpec;
+import me.hammerle.snuviscript.code.SourceMap;
 import me.hammerle.snuviscript.tokenizer.Tokenizer;
-import me.hammerle.snuviscript.tokenizer.Token;
+import me.hammerle.snuviscript.tokenizer.TokenBuffer;
 import me.hammerle.snuviscript.code.Compiler;
+import me.hammerle.snuviscript.exceptions.PreScriptException;
 import me.hammerle.snuviscript.instructions.Instruction;
 
 public class Test {
@@ -22,7 +37,17 @@ public class Test {
     public static void test() {
         testTokenizer();
         testCompiler();
-        testOutput();
+        // the output must not depend on the speed of the machine
+        PARSER.setTimeSlice(Long.MAX_VALUE / 4);
+        for(ExecutionEngine engine : ExecutionEngine.values()) {
+            testOutput(engine, engine.toString().toLowerCase());
+        }
+        testPrecompiled();
+        testRunaway();
+        testFairShare();
+        testHotReload();
+        testStartScripts();
+        testFusion();
 
         // LOGGER.reset();
         // PARSER.startScript("test", "./test/test.test");
@@ -30,7 +55,8 @@ public class Test {
         // LOGGER.printAll();
     }
 
-    private static void testOutput() {
+    private static void testOutput(ExecutionEngine engine, String name) {
+        PARSER.setExecutionEngine(engine);
         done = 0;
         tests = 0;
         forEachFile(new File("./test"), ".out", (inFile, checkFile) -> {
@@ -38,14 +64,284 @@ public class Test {
 
             LOGGER.reset();
 
-            Script sc = new Script(PARSER, null, inFile.getName(), inFile.getPath());
-            sc.run();
+            try {
+                Script sc = new Script(PARSER, null, inFile.getName(), inFile.getPath());
+                sc.run();
+            } catch(PreScriptException ex) {
+                printError(ex);
+            }
 
             if(LOGGER.check(checkFile)) {
                 done++;
             }
         });
-        System.out.println(String.format("%d / %d output tests succeeded", done, tests));
+        System.out.println(String.format("%d / %d output tests succeeded (%s)", done, tests,
+                name));
+    }
+
+    // the images are written by the first run and loaded by the others, an image written
+    // again was not loaded
+    private static void testPrecompiled() {
+        File directory;
+        try {
+            directory = Files.createTempDirectory("snuvic").toFile();
+        } catch(IOException ex) {
+            ex.printStackTrace();
+            return;
+        }
+        PARSER.setPrecompiledDirectory(directory);
+        try {
+            testOutput(ExecutionEngine.STACK, "writing precompiled");
+            Map<File, Object> written = getFileKeys(directory);
+            for(ExecutionEngine engine : ExecutionEngine.values()) {
+                testOutput(engine, "loading precompiled, " + engine.toString().toLowerCase());
+            }
+            Map<File, Object> loaded = getFileKeys(directory);
+            long same = written.entrySet().stream()
+                    .filter(e -> e.getValue().equals(loaded.get(e.getKey()))).count();
+            System.out.println(String.format("%d / %d precompiled images were loaded", same,
+                    written.size()));
+        } finally {
+            PARSER.setPrecompiledDirectory(null);
+            for(File f : directory.listFiles()) {
+                f.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    // endless loops, calls and errors are held once the budget is used up, the budget is checked
+    // at jumps and calls, code without them always ends
+    private static void testRunaway() {
+        done = 0;
+        tests = 0;
+        for(ExecutionEngine engine : ExecutionEngine.values()) {
+            for(String name : new String[] {"loop", "recursion", "errors"}) {
+                tests++;
+                if(testRunaway(engine, "./test/budget/" + name + ".snuvi")) {
+                    done++;
+                } else {
+                    System.out.println(String.format("%s was not held (%s)", name, engine));
+                }
+            }
+        }
+        System.out.println(String.format("%d / %d runaway tests succeeded", done, tests));
+    }
+
+    private static boolean testRunaway(ExecutionEngine engine, String path) {
+        TestScheduler scheduler = new TestScheduler();
+        // the errors of the endless error handler are not printed
+        ScriptManager sm = new ScriptManager((message, ex, function, script, sc, lines) -> {
+        }, scheduler);
+        sm.setExecutionEngine(engine);
+        sm.setTimeSlice(Long.MAX_VALUE / 4);
+        sm.setInstructionBudget(1000);
+        Script sc = sm.startScript("runaway", path);
+        if(sc == null || !sc.isHolded() || sc.shouldTerm()) {
+            return false;
+        }
+        // the fair share scheduler continues the script in every tick until it is removed
+        scheduler.execute(3);
+        boolean held = sc.isHolded() && !sc.shouldTerm();
+        sm.removeScript(sc);
+        scheduler.execute();
+        return held && sm.getScripts().isEmpty();
+    }
+
+    // throttled scripts share the ticks by their priority, so their virtual runtimes, the cpu
+    // time divided by the priority, stay close to each other
+    private static void testFairShare() {
+        done = 0;
+        tests = 0;
+        for(ExecutionEngine engine : ExecutionEngine.values()) {
+            tests++;
+            TestScheduler scheduler = new TestScheduler();
+            ScriptManager sm = new ScriptManager(LOGGER, scheduler);
+            sm.setExecutionEngine(engine);
+            sm.setTimeSlice(Long.MAX_VALUE / 4);
+            sm.setInstructionBudget(1000);
+            sm.setTickBudget(2_000_000);
+            LOGGER.reset();
+            Script low = sm.startScript("low", "./test/budget/loop.snuvi");
+            Script high = sm.startScript("high", "./test/budget/loop.snuvi");
+            high.setPriority(ScriptManager.DEFAULT_PRIORITY * 3);
+            // the first ticks are slowed down by the jit
+            scheduler.execute(20);
+            long lowStart = low.getCpuTime();
+            long highStart = high.getCpuTime();
+            scheduler.execute(100);
+            double lowRuntime = (double) (low.getCpuTime() - lowStart) / low.getPriority();
+            double highRuntime = (double) (high.getCpuTime() - highStart) / high.getPriority();
+            if(Math.abs(lowRuntime - highRuntime) <= 0.15 * Math.max(lowRuntime, highRuntime)) {
+                done++;
+            } else {
+                System.out.println(String.format("virtual runtimes %.0f and %.0f differ (%s)",
+                        lowRuntime, highRuntime, engine));
+            }
+            sm.removeScripts();
+        }
+        System.out.println(String.format("%d / %d fair share tests succeeded", done, tests));
+    }
+
+    // a running script gets the new program once an imported file is edited and once an import
+    // resolves to another file because a file was created in an earlier root
+    private static void testHotReload() {
+        done = 0;
+        tests = 0;
+        File directory = null;
+        ScriptManager sm = new ScriptManager(LOGGER, (name, r, delay) -> r.run());
+        try {
+            directory = Files.createTempDirectory("snuvihot").toFile();
+            File first = new File(directory, "first");
+            File second = new File(directory, "second");
+            first.mkdir();
+            second.mkdir();
+            File main = new File(directory, "main.snuvi");
+            write(main, "import \"lib\";\nx = lib();\nwait();\n");
+            write(new File(second, "lib.snuvi"), "function lib() {\n    return 1;\n}\n");
+            sm.setImportRoots(Arrays.asList(first, second));
+            BlockingQueue<Script> restarted = new LinkedBlockingQueue<>();
+            sm.enableHotReload((sc, program) -> restarted.add(sm.restartScript(sc, program)));
+            File other = new File(directory, "other.snuvi");
+            write(other, "import \"util\";\nx = util();\nwait();\n");
+            write(new File(second, "util.snuvi"), "function util() {\n    return 0;\n}\n");
+            Script sc = sm.startScript("hot", main.getPath());
+            Script cold = sm.startScript("cold", other.getPath());
+            Program coldProgram = cold.getProgram();
+
+            tests++;
+            write(new File(second, "lib.snuvi"), "function lib() {\n    return 2;\n}\n");
+            sc = checkReload(restarted, sc, 2.0, "edited import");
+
+            tests++;
+            write(new File(first, "lib.snuvi"), "function lib() {\n    return 3;\n}\n");
+            checkReload(restarted, sc, 3.0, "shadowed import");
+
+            // only the programs using the changed files are compiled again
+            tests++;
+            if(sm.getScript(cold.getId()) == cold && cold.getProgram() == coldProgram) {
+                done++;
+            } else {
+                System.out.println("an unchanged script was reloaded");
+            }
+        } catch(IOException | InterruptedException ex) {
+            ex.printStackTrace();
+        } finally {
+            sm.disableHotReload();
+            sm.removeScripts();
+            delete(directory);
+        }
+        System.out.println(String.format("%d / %d hot reload tests succeeded", done, tests));
+    }
+
+    private static Script checkReload(BlockingQueue<Script> restarted, Script old, Object x,
+            String name) throws InterruptedException {
+        Script sc = restarted.poll(10, TimeUnit.SECONDS);
+        if(sc == null || sc.getProgram() == old.getProgram()) {
+            System.out.println(String.format("%s was not reloaded", name));
+            return old;
+        } else if(!x.equals(sc.getVar("x").get(sc))) {
+            System.out.println(String.format("%s has the old program", name));
+            return sc;
+        }
+        done++;
+        return sc;
+    }
+
+    private static void write(File f, String text) throws IOException {
+        Files.write(f.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void delete(File f) {
+        if(f == null) {
+            return;
+        }
+        File[] files = f.listFiles();
+        if(files != null) {
+            for(File child : files) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+
+    // programs sharing modules are compiled in parallel, the scripts of the same files share one
+    // program and a broken module only stops its own script
+    private static void testStartScripts() {
+        done = 0;
+        tests = 0;
+        ScriptManager sm = new ScriptManager(LOGGER, SCHEDULER);
+        sm.setTimeSlice(Long.MAX_VALUE / 4);
+        List<ScriptSpec> specs = new ArrayList<>();
+        for(int i = 0; i < 8; i++) {
+            specs.add(new ScriptSpec("imports" + i % 3, "./test/imports/imports" + i % 3));
+        }
+        LOGGER.reset();
+        List<Script> started = sm.startScripts(specs);
+        Program shared = started.get(2).getProgram();
+        for(int i = 0; i < specs.size(); i++) {
+            tests++;
+            Script sc = started.get(i);
+            boolean ok;
+            switch(i % 3) {
+                case 1:
+                    ok = sc == null;
+                    break;
+                case 2:
+                    ok = sc != null && sc.getProgram() == shared && sc.resolveVar("missing") == -1
+                            && Double.valueOf(4).equals(sc.getGlobal(sc.resolveVar("y")));
+                    break;
+                default:
+                    ok = sc != null && sc.shouldTerm();
+            }
+            if(ok) {
+                done++;
+            } else {
+                System.out.println(String.format("%s was not started correctly",
+                        specs.get(i).getName()));
+            }
+        }
+        System.out.println(String.format("%d / %d parallel start tests succeeded", done, tests));
+    }
+
+    // the loop condition, the increment and both array accesses are fused, the statistics count
+    // the instructions which were replaced
+    private static void testFusion() {
+        done = 0;
+        tests = 0;
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("compare branch", 4);
+        expected.put("increment", 2);
+        expected.put("array load", 4);
+        for(ExecutionEngine engine : ExecutionEngine.values()) {
+            tests++;
+            ScriptManager sm = new ScriptManager(LOGGER, SCHEDULER);
+            sm.setExecutionEngine(engine);
+            Map<String, Integer> statistics =
+                    sm.getProgram("./test/fusion/loop.snuvi").getFusionStatistics();
+            if(expected.equals(statistics)) {
+                done++;
+            } else {
+                System.out.println(String.format("fusion statistics %s (%s)", statistics, engine));
+            }
+        }
+        System.out.println(String.format("%d / %d fusion tests succeeded", done, tests));
+    }
+
+    // images are replaced by a new file when they are written
+    private static Map<File, Object> getFileKeys(File directory) {
+        Map<File, Object> keys = new HashMap<>();
+        for(File f : directory.listFiles()) {
+            try {
+                BasicFileAttributes attributes =
+                        Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+                keys.put(f, attributes.fileKey() != null ? attributes.fileKey()
+                        : attributes.lastModifiedTime());
+            } catch(IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        return keys;
     }
 
     private static void testTokenizer() {
@@ -57,8 +353,9 @@ public class Test {
                     tests++;
                     Tokenizer tokenizer = new Tokenizer();
                     LOGGER.reset();
-                    for(Token t : tokenizer.tokenize(in)) {
-                        LOGGER.print(t.toString(), null, null, null, null, null);
+                    TokenBuffer tokens = tokenizer.tokenize(in);
+                    for(int i = 0; i < tokens.size(); i++) {
+                        LOGGER.print(tokens.toString(i), null, null, null, null, null);
                     }
                     if(LOGGER.check(checkFile)) {
                         done++;
@@ -89,6 +386,11 @@ public class Test {
                     if(LOGGER.check(checkFile)) {
                         done++;
                     }
+                } catch(PreScriptException ex) {
+                    printError(ex);
+                    if(LOGGER.check(checkFile)) {
+                        done++;
+                    }
                 }
             } catch(Exception ex) {
                 System.out.println("_________________________________________");
@@ -100,6 +402,14 @@ public class Test {
         System.out.println(String.format("%d / %d compiler tests succeeded", done, tests));
     }
 
+    // errors found while compiling are part of the expected output
+    private static void printError(PreScriptException ex) {
+        SourceMap map = ex.getSourceMap();
+        String line = map == null ? String.valueOf(ex.getLine()) : map.format(ex.getLine());
+        LOGGER.print(String.format("%s at %s", ex.getMessage(), line), null, null, null, null,
+                null);
+    }
+
     private static void forEachFile(File f, String ending, BiConsumer<File, File> bc) {
         if(f.isFile()) {
             if(!f.getName().contains(".")) {
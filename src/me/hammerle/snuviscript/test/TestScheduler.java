@@ -16,4 +16,11 @@ public class TestScheduler implements ISnuviScheduler {
             list.removeFirst().run();
         }
     }
+
+    // for tasks which schedule themselves again
+    public void execute(int tasks) {
+        for(int i = 0; i < tasks && !list.isEmpty(); i++) {
+            list.removeFirst().run();
+        }
+    }
 }
@@ -0,0 +1,159 @@
+package me.hammerle.snuviscript.tokenizer;
+
+import java.util.Arrays;
+
+// tokens stored as parallel arrays, literals, labels, strings and numbers point into a pool in
+// which equal texts are stored once, numbers are parsed once per distinct text
+public final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int NO_DATA = -1;
+
+    private int[] types = new int[256];
+    private int[] lines = new int[256];
+    private int[] data = new int[256];
+    private int size = 0;
+
+    private String[] pool = new String[64];
+    private int[] hashes = new int[64];
+    private double[] numbers = new double[64];
+    private boolean[] parsed = new boolean[64];
+    private int poolSize = 0;
+    // pool index + 1 for each used slot, the length is a power of two
+    private int[] table = new int[128];
+
+    public int size() {
+        return size;
+    }
+
+    public TokenType getType(int index) {
+        return TYPES[types[index]];
+    }
+
+    public int getLine(int index) {
+        return lines[index];
+    }
+
+    public String getString(int index) {
+        return pool[data[index]];
+    }
+
+    public double getNumber(int index) {
+        return numbers[data[index]];
+    }
+
+    public Object getData(int index) {
+        int d = data[index];
+        if(d == NO_DATA) {
+            return null;
+        }
+        return types[index] == TokenType.NUMBER.ordinal() ? (Object) numbers[d] : pool[d];
+    }
+
+    void add(TokenType type, int line) {
+        add(type, line, NO_DATA);
+    }
+
+    void add(TokenType type, int line, int poolIndex) {
+        if(size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            data = Arrays.copyOf(data, capacity);
+        }
+        types[size] = type.ordinal();
+        lines[size] = line;
+        data[size] = poolIndex;
+        size++;
+    }
+
+    void addNumber(int line, int poolIndex) {
+        if(!parsed[poolIndex]) {
+            numbers[poolIndex] = Double.parseDouble(pool[poolIndex]);
+            parsed[poolIndex] = true;
+        }
+        add(TokenType.NUMBER, line, poolIndex);
+    }
+
+    String getPooled(int poolIndex) {
+        return pool[poolIndex];
+    }
+
+    // returns the pool index of the text, a string is only created for new texts
+    int intern(char[] chars, int length) {
+        int hash = 0;
+        for(int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while(table[slot] != 0) {
+            int index = table[slot] - 1;
+            if(hashes[index] == hash && equals(pool[index], chars, length)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if(poolSize == pool.length) {
+            int capacity = poolSize * 2;
+            pool = Arrays.copyOf(pool, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            parsed = Arrays.copyOf(parsed, capacity);
+        }
+        int index = poolSize++;
+        pool[index] = new String(chars, 0, length);
+        hashes[index] = hash;
+        table[slot] = index + 1;
+        if(poolSize * 2 > table.length) {
+            rehash();
+        }
+        return index;
+    }
+
+    private static boolean equals(String s, char[] chars, int length) {
+        if(s.length() != length) {
+            return false;
+        }
+        for(int i = 0; i < length; i++) {
+            if(s.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for(int i = 0; i < poolSize; i++) {
+            int slot = hashes[i] & mask;
+            while(table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    public String toString(int index) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("(");
+        sb.append(lines[index]);
+        sb.append(", ");
+        sb.append(getType(index));
+        Object d = getData(index);
+        if(d != null) {
+            sb.append(", ");
+            if(d instanceof String) {
+                sb.append('"');
+                sb.append(d);
+                sb.append('"');
+            } else {
+                sb.append(d);
+            }
+        }
+        sb.append(")");
+
+        return sb.toString();
+    }
+}
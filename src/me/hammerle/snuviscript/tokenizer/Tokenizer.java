@@ -1,21 +1,29 @@
 package me.hammerle.snuviscript.tokenizer;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import me.hammerle.snuviscript.exceptions.PreScriptException;
 import static me.hammerle.snuviscript.tokenizer.TokenType.*;
 
 public class Tokenizer {
-    private StreamCharReader stream = null;
-    private final ArrayList<Token> tokens = new ArrayList<>();
+    private Utf8Source source = null;
+    private TokenBuffer tokens = null;
+    // text of the current literal, number or string
+    private char[] text = new char[64];
+    private int textLength = 0;
+    // counted through all streams, see getFileStarts
     private int line = 1;
+    private int[] fileStarts = new int[0];
+    private int files = 0;
 
     private int next() {
-        return stream.readChar();
+        return source.next();
     }
 
     private int peek() {
-        return stream.peekChar();
+        return source.peek();
     }
 
     private boolean next(char c) {
@@ -27,11 +35,22 @@ public class Tokenizer {
     }
 
     private void add(TokenType type) {
-        tokens.add(new Token(type, line));
+        tokens.add(type, line);
     }
 
-    private void add(TokenType type, Object data) {
-        tokens.add(new DataToken(type, line, data));
+    private void add(TokenType type, int poolIndex) {
+        tokens.add(type, line, poolIndex);
+    }
+
+    private void appendText(int c) {
+        if(textLength + 2 > text.length) {
+            text = Arrays.copyOf(text, text.length * 2);
+        }
+        textLength += Character.toChars(c, text, textLength);
+    }
+
+    private int internText() {
+        return tokens.intern(text, textLength);
     }
 
     private void add(char c, TokenType t1, TokenType t2, TokenType t3, TokenType t4) {
@@ -52,21 +71,49 @@ public class Tokenizer {
         }
     }
 
-    public Token[] tokenize(InputStream... streams) {
-        tokens.clear();
-        int fileCounter = 0;
-        for(InputStream in : streams) {
-            fileCounter++;
-            line = (fileCounter << 24) | 1;
-            stream = new StreamCharReader(in);
+    public TokenBuffer tokenize(InputStream... streams) {
+        ByteBuffer[] buffers = new ByteBuffer[streams.length];
+        for(int i = 0; i < streams.length; i++) {
+            try {
+                buffers[i] = ByteBuffer.wrap(streams[i].readAllBytes());
+            } catch(IOException ex) {
+                throw new PreScriptException("cannot read script: " + ex.getMessage(), -1);
+            }
+        }
+        return tokenize(buffers);
+    }
+
+    // buffers can be memory mapped files, they are read from their position to their limit
+    public TokenBuffer tokenize(ByteBuffer... buffers) {
+        tokens = new TokenBuffer();
+        fileStarts = new int[buffers.length];
+        files = 0;
+        line = 0;
+        for(ByteBuffer buffer : buffers) {
+            line++;
+            fileStarts[files++] = line;
+            source = new Utf8Source(buffer);
 
             int c;
-            while((c = Tokenizer.this.next()) != -1) {
+            while((c = next()) != -1) {
                 handleChar(c);
             }
         }
+        source = null;
         add(EOF);
-        return tokens.toArray(new Token[tokens.size()]);
+        TokenBuffer t = tokens;
+        tokens = null;
+        return t;
+    }
+
+    // the first line of each tokenized stream, also valid after an error
+    public int[] getFileStarts() {
+        return Arrays.copyOf(fileStarts, files);
+    }
+
+    // the line counter after the last stream, the next stream would start one line later
+    public int getLastLine() {
+        return line;
     }
 
     private void handleChar(int c) {
@@ -80,20 +127,20 @@ public class Tokenizer {
     }
 
     private void handleLiteral(int c, TokenType type) {
-        StringBuilder sb = new StringBuilder();
-        sb.append((char) c);
+        textLength = 0;
+        appendText(c);
 
         while(true) {
             int data = peek();
             if(!Character.isLetterOrDigit(data) && data != '_' && data != '.') {
                 break;
             }
-            sb.append((char) data);
+            appendText(data);
             next();
         }
 
-        String s = sb.toString();
-        switch(s) {
+        int s = internText();
+        switch(tokens.getPooled(s)) {
             case "if":
                 add(IF);
                 break;
@@ -137,8 +184,8 @@ public class Tokenizer {
     }
 
     private void handleNumber(int c) {
-        StringBuilder sb = new StringBuilder();
-        sb.append((char) c);
+        textLength = 0;
+        appendText(c);
 
         while(true) {
             int data = peek();
@@ -146,10 +193,10 @@ public class Tokenizer {
                 break;
             }
             next();
-            sb.append((char) data);
+            appendText(data);
         }
         if(peek() == '.') {
-            sb.append((char) next());
+            appendText(next());
         }
         while(true) {
             int data = peek();
@@ -157,10 +204,10 @@ public class Tokenizer {
                 break;
             }
             next();
-            sb.append((char) data);
+            appendText(data);
         }
         try {
-            add(NUMBER, Double.parseDouble(sb.toString()));
+            tokens.addNumber(line, internText());
         } catch(NumberFormatException ex) {
             throw new PreScriptException("invalid number", line);
         }
@@ -253,7 +300,7 @@ public class Tokenizer {
     }
 
     private void handleString() {
-        StringBuilder sb = new StringBuilder();
+        textLength = 0;
         int oldLine = line;
         while(true) {
             int data = next();
@@ -261,7 +308,7 @@ public class Tokenizer {
                 throw new PreScriptException("non closed string literal", oldLine);
             }
             if(data == '"') {
-                add(STRING, sb.toString());
+                add(STRING, internText());
                 break;
             }
             if(data == '\n') {
@@ -283,7 +330,7 @@ public class Tokenizer {
                         throw new PreScriptException("invalid escaped character", line);
                 }
             }
-            sb.append((char) data);
+            appendText(data);
         }
     }
 
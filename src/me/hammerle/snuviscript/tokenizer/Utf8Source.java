@@ -0,0 +1,92 @@
+package me.hammerle.snuviscript.tokenizer;
+
+import java.nio.ByteBuffer;
+
+// decodes utf-8 from a fully read or memory mapped buffer into code points, every code point is
+// decoded once and kept for peek, malformed sequences become the replacement character
+public final class Utf8Source {
+    public static final int REPLACEMENT = 0xFFFD;
+
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int position;
+    // the next code point and the position behind it
+    private int current;
+    private int after;
+
+    public Utf8Source(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.limit = buffer.limit();
+        this.position = buffer.position();
+        decode();
+        if(current == 0xFEFF) {
+            next();
+        }
+    }
+
+    public Utf8Source(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    public int peek() {
+        return current;
+    }
+
+    public int next() {
+        int c = current;
+        position = after;
+        decode();
+        return c;
+    }
+
+    private void decode() {
+        if(position >= limit) {
+            current = -1;
+            after = position;
+            return;
+        }
+        int b = buffer.get(position) & 0xFF;
+        if(b < 0x80) {
+            current = b;
+            after = position + 1;
+            return;
+        }
+        int length;
+        int min;
+        int c;
+        if(b >= 0xC2 && b <= 0xDF) {
+            length = 2;
+            min = 0x80;
+            c = b & 0x1F;
+        } else if(b >= 0xE0 && b <= 0xEF) {
+            length = 3;
+            min = 0x800;
+            c = b & 0x0F;
+        } else if(b >= 0xF0 && b <= 0xF4) {
+            length = 4;
+            min = 0x10000;
+            c = b & 0x07;
+        } else {
+            // continuation byte without a lead or a lead which cannot start valid utf-8
+            current = REPLACEMENT;
+            after = position + 1;
+            return;
+        }
+        int i = 1;
+        while(i < length && position + i < limit) {
+            int cont = buffer.get(position + i) & 0xFF;
+            if((cont & 0xC0) != 0x80) {
+                break;
+            }
+            c = (c << 6) | (cont & 0x3F);
+            i++;
+        }
+        after = position + i;
+        if(i < length || c < min || c > Character.MAX_CODE_POINT
+                || (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)) {
+            current = REPLACEMENT;
+            return;
+        }
+        current = c;
+    }
+}
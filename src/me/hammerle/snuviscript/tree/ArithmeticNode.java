@@ -0,0 +1,62 @@
+package me.hammerle.snuviscript.tree;
+
+import me.hammerle.snuviscript.code.Script;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+
+public class ArithmeticNode extends Node {
+    private final int id;
+    private final char operator;
+    private final Node left;
+    // null for the sign inversion
+    private final Node right;
+
+    public ArithmeticNode(int line, String name, int id, char operator, Node left,
+            Node right) {
+        super(line, name);
+        this.id = id;
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public InputProvider evaluate(Script sc) throws Exception {
+        return sc.getNodeStorage().setNumber(id, evaluateDouble(sc));
+    }
+
+    @Override
+    public double evaluateDouble(Script sc) throws Exception {
+        try {
+            double a = left.evaluateDouble(sc);
+            if(right == null) {
+                return -a;
+            }
+            double b = right.evaluateDouble(sc);
+            switch(operator) {
+                case '+':
+                    return a + b;
+                case '-':
+                    return a - b;
+                case '*':
+                    return a * b;
+                default:
+                    return a / b;
+            }
+        } catch(Exception ex) {
+            throw fail(ex);
+        }
+    }
+
+    @Override
+    public void push(Script sc) throws Exception {
+        sc.pushDouble(evaluateDouble(sc));
+    }
+
+    @Override
+    public String toString() {
+        if(right == null) {
+            return toString(String.valueOf(operator), left);
+        }
+        return toString(String.valueOf(operator), left, right);
+    }
+}
@@ -0,0 +1,60 @@
+package me.hammerle.snuviscript.tree;
+
+import me.hammerle.snuviscript.code.Script;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+import me.hammerle.snuviscript.inputprovider.Variable;
+
+public class ArrayNode extends Node {
+    private final int id;
+    private final Variable v;
+    private final Node[] children;
+
+    public ArrayNode(int line, String name, int id, Variable v, Node[] children) {
+        super(line, name);
+        this.id = id;
+        this.v = v;
+        this.children = children;
+    }
+
+    @Override
+    public InputProvider evaluate(Script sc) throws Exception {
+        InputProvider[] args = evaluateArguments(sc);
+        try {
+            return sc.getNodeStorage().setElement(id, getArray(sc, args),
+                    args[args.length - 1].getInt(sc));
+        } catch(Exception ex) {
+            throw fail(ex);
+        }
+    }
+
+    @Override
+    public void push(Script sc) throws Exception {
+        InputProvider[] args = evaluateArguments(sc);
+        try {
+            sc.pushArrayElement(getArray(sc, args), args[args.length - 1].getInt(sc));
+        } catch(Exception ex) {
+            throw fail(ex);
+        }
+    }
+
+    private InputProvider[] evaluateArguments(Script sc) throws Exception {
+        InputProvider[] args = sc.getNodeStorage().getArguments(id, children.length);
+        for(int i = 0; i < children.length; i++) {
+            args[i] = children[i].evaluate(sc);
+        }
+        return args;
+    }
+
+    private Object getArray(Script sc, InputProvider[] args) throws Exception {
+        Object o = v.get(sc);
+        for(int i = 0; i < args.length - 1; i++) {
+            o = java.lang.reflect.Array.get(o, args[i].getInt(sc));
+        }
+        return o;
+    }
+
+    @Override
+    public String toString() {
+        return toString(v + "[]", children);
+    }
+}
@@ -0,0 +1,58 @@
+package me.hammerle.snuviscript.tree;
+
+import me.hammerle.snuviscript.code.NamedFunction;
+import me.hammerle.snuviscript.code.Script;
+import me.hammerle.snuviscript.inputprovider.ConstantBoolean;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+
+public class CompareNode extends Node {
+    private final int id;
+    private final NamedFunction function;
+    private final Node left;
+    private final Node right;
+
+    public CompareNode(int line, int id, NamedFunction function, Node left, Node right) {
+        super(line, function.getName());
+        this.id = id;
+        this.function = function;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public InputProvider evaluate(Script sc) throws Exception {
+        return evaluateBoolean(sc) ? ConstantBoolean.TRUE : ConstantBoolean.FALSE;
+    }
+
+    @Override
+    public boolean evaluateBoolean(Script sc) throws Exception {
+        InputProvider a = left.evaluate(sc);
+        InputProvider b = right.evaluate(sc);
+        try {
+            if(!a.isDouble(sc) || !b.isDouble(sc)) {
+                InputProvider[] args = sc.getNodeStorage().getArguments(id, 2);
+                args[0] = a;
+                args[1] = b;
+                return (Boolean) function.execute(sc, args);
+            }
+            int c = Double.compare(a.getDouble(sc), b.getDouble(sc));
+            switch(function.getName()) {
+                case "<":
+                    return c < 0;
+                case ">":
+                    return c > 0;
+                case "<=":
+                    return c <= 0;
+                default:
+                    return c >= 0;
+            }
+        } catch(Exception ex) {
+            throw fail(ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toString(function.getName(), left, right);
+    }
+}
@@ -0,0 +1,52 @@
+package me.hammerle.snuviscript.tree;
+
+import me.hammerle.snuviscript.code.NamedFunction;
+import me.hammerle.snuviscript.code.Script;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+
+public class FunctionNode extends Node {
+    private final int id;
+    private final NamedFunction function;
+    private final Node[] children;
+
+    public FunctionNode(int line, int id, NamedFunction function, Node[] children) {
+        super(line, function.getName());
+        this.id = id;
+        this.function = function;
+        this.children = children;
+    }
+
+    @Override
+    public InputProvider evaluate(Script sc) throws Exception {
+        Object o = execute(sc);
+        if(o == Void.TYPE) {
+            return null;
+        }
+        return sc.getNodeStorage().setValue(id, o);
+    }
+
+    @Override
+    public void push(Script sc) throws Exception {
+        Object o = execute(sc);
+        if(o != Void.TYPE) {
+            sc.pushValue(o);
+        }
+    }
+
+    private Object execute(Script sc) throws Exception {
+        InputProvider[] args = sc.getNodeStorage().getArguments(id, children.length);
+        for(int i = 0; i < children.length; i++) {
+            args[i] = children[i].evaluate(sc);
+        }
+        try {
+            return function.execute(sc, args);
+        } catch(Exception ex) {
+            throw fail(ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toString(function.getName(), children);
+    }
+}
@@ -0,0 +1,49 @@
+package me.hammerle.snuviscript.tree;
+
+import me.hammerle.snuviscript.code.Script;
+import me.hammerle.snuviscript.inputprovider.ConstantBoolean;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+
+// short circuiting && and ||, the left value is the result if it decides the expression
+public class LogicNode extends Node {
+    private final boolean check;
+    private final Node left;
+    private final Node right;
+
+    public LogicNode(int line, String name, boolean check, Node left, Node right) {
+        super(line, name);
+        this.check = check;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public InputProvider evaluate(Script sc) throws Exception {
+        InputProvider a = left.evaluate(sc);
+        try {
+            if(a.getBoolean(sc) == check) {
+                return a;
+            }
+            return right.evaluateBoolean(sc) ? ConstantBoolean.TRUE : ConstantBoolean.FALSE;
+        } catch(Exception ex) {
+            throw fail(ex);
+        }
+    }
+
+    @Override
+    public boolean evaluateBoolean(Script sc) throws Exception {
+        try {
+            if(left.evaluateBoolean(sc) == check) {
+                return check;
+            }
+            return right.evaluateBoolean(sc);
+        } catch(Exception ex) {
+            throw fail(ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toString(check ? "||" : "&&", left, right);
+    }
+}
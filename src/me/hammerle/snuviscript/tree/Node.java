@@ -0,0 +1,53 @@
+package me.hammerle.snuviscript.tree;
+
+import me.hammerle.snuviscript.code.Script;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+
+// nodes evaluate their children directly, the returned provider stays valid until the parent
+// node has consumed it
+public abstract class Node {
+    private final int line;
+    private final String name;
+
+    protected Node(int line, String name) {
+        this.line = line;
+        this.name = name;
+    }
+
+    public abstract InputProvider evaluate(Script sc) throws Exception;
+
+    public double evaluateDouble(Script sc) throws Exception {
+        return evaluate(sc).getDouble(sc);
+    }
+
+    public boolean evaluateBoolean(Script sc) throws Exception {
+        return evaluate(sc).getBoolean(sc);
+    }
+
+    // the providers of a node are reused by every evaluation of the node in the script, a
+    // recursive call would overwrite them while they wait on the data stack, so the result is
+    // copied into the stack
+    public void push(Script sc) throws Exception {
+        sc.pushValue(evaluate(sc).get(sc));
+    }
+
+    protected final NodeException fail(Exception ex) {
+        if(ex instanceof NodeException) {
+            return (NodeException) ex;
+        }
+        return new NodeException(name, line, ex);
+    }
+
+    protected static String toString(String name, Node... children) {
+        StringBuilder sb = new StringBuilder(name);
+        sb.append("(");
+        for(int i = 0; i < children.length; i++) {
+            if(i > 0) {
+                sb.append(", ");
+            }
+            sb.append(children[i]);
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,28 @@
+package me.hammerle.snuviscript.tree;
+
+// thrown by the innermost node which failed, so an error names that node instead of the last
+// instruction of the whole expression
+public final class NodeException extends Exception {
+    private static final long serialVersionUID = 1L;
+    private final String name;
+    private final int line;
+
+    NodeException(String name, int line, Exception cause) {
+        super(null, cause, false, false);
+        this.name = name;
+        this.line = line;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public synchronized Exception getCause() {
+        return (Exception) super.getCause();
+    }
+}
@@ -0,0 +1,70 @@
+package me.hammerle.snuviscript.tree;
+
+import java.util.Arrays;
+import me.hammerle.snuviscript.inputprovider.ArrayReturnWrapper;
+import me.hammerle.snuviscript.inputprovider.DoubleReturnWrapper;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+import me.hammerle.snuviscript.inputprovider.ReturnWrapper;
+
+// per script storage for argument arrays and results of nodes, indexed by the node id
+public final class NodeStorage {
+    private InputProvider[][] arguments = new InputProvider[0][];
+    private ReturnWrapper[] values = new ReturnWrapper[0];
+    private DoubleReturnWrapper[] numbers = new DoubleReturnWrapper[0];
+    private ArrayReturnWrapper[] elements = new ArrayReturnWrapper[0];
+
+    private static int grow(int length, int id) {
+        return Math.max(id + 1, length * 2);
+    }
+
+    public InputProvider[] getArguments(int id, int length) {
+        if(id >= arguments.length) {
+            arguments = Arrays.copyOf(arguments, grow(arguments.length, id));
+        }
+        InputProvider[] args = arguments[id];
+        if(args == null) {
+            args = new InputProvider[length];
+            arguments[id] = args;
+        }
+        return args;
+    }
+
+    public InputProvider setValue(int id, Object o) {
+        if(id >= values.length) {
+            values = Arrays.copyOf(values, grow(values.length, id));
+        }
+        ReturnWrapper wrapper = values[id];
+        if(wrapper == null) {
+            wrapper = new ReturnWrapper();
+            values[id] = wrapper;
+        }
+        wrapper.setValue(o);
+        return wrapper;
+    }
+
+    public InputProvider setNumber(int id, double d) {
+        if(id >= numbers.length) {
+            numbers = Arrays.copyOf(numbers, grow(numbers.length, id));
+        }
+        DoubleReturnWrapper wrapper = numbers[id];
+        if(wrapper == null) {
+            wrapper = new DoubleReturnWrapper();
+            numbers[id] = wrapper;
+        }
+        wrapper.setValue(d);
+        return wrapper;
+    }
+
+    public InputProvider setElement(int id, Object array, int index) {
+        if(id >= elements.length) {
+            elements = Arrays.copyOf(elements, grow(elements.length, id));
+        }
+        ArrayReturnWrapper wrapper = elements[id];
+        if(wrapper == null) {
+            wrapper = new ArrayReturnWrapper();
+            elements[id] = wrapper;
+        }
+        wrapper.setValue(array, index);
+        return wrapper;
+    }
+}
@@ -0,0 +1,33 @@
+package me.hammerle.snuviscript.tree;
+
+import me.hammerle.snuviscript.code.Script;
+import me.hammerle.snuviscript.inputprovider.InputProvider;
+
+public class ValueNode extends Node {
+    private final InputProvider value;
+
+    public ValueNode(int line, String name, InputProvider value) {
+        super(line, name);
+        this.value = value;
+    }
+
+    @Override
+    public InputProvider evaluate(Script sc) {
+        return value;
+    }
+
+    @Override
+    public double evaluateDouble(Script sc) {
+        return value.getDouble(sc);
+    }
+
+    @Override
+    public boolean evaluateBoolean(Script sc) {
+        return value.getBoolean(sc);
+    }
+
+    @Override
+    public String toString() {
+        return value.toString();
+    }
+}